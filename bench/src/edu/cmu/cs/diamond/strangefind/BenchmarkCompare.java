@@ -0,0 +1,192 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH CSV result files and exits with status 1 if any
+ * benchmark got slower than the baseline by more than a threshold. A
+ * change within the error bars of the two scores together is not counted
+ * either way.
+ * <p>
+ * Usage: BenchmarkCompare baseline.csv results.csv [threshold, default 0.1]
+ */
+public class BenchmarkCompare {
+    private static class Score {
+        String mode;
+
+        double value;
+
+        // half width of the confidence interval, 0 if not given
+        double error;
+
+        String unit;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkCompare baseline.csv "
+                    + "results.csv [threshold]");
+            System.exit(2);
+        }
+
+        Map<String, Score> baseline = read(args[0]);
+        Map<String, Score> results = read(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2])
+                : 0.1;
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> e : results.entrySet()) {
+            Score now = e.getValue();
+            Score then = baseline.get(e.getKey());
+            if (then == null || !then.unit.equals(now.unit)) {
+                System.out.println("new      " + e.getKey());
+                continue;
+            }
+
+            // throughput: higher is better, everything else: lower
+            double change = now.value / then.value - 1;
+            if (now.mode.equals("thrpt")) {
+                change = -change;
+            }
+
+            // within the error bars it may be noise
+            boolean significant = Math.abs(now.value - then.value) > now.error
+                    + then.error;
+
+            String verdict = "ok      ";
+            if (significant && change > threshold) {
+                verdict = "SLOWER  ";
+                regressions++;
+            } else if (significant && change < -threshold) {
+                verdict = "faster  ";
+            }
+            System.out.println(String.format(
+                    "%s %s: %.3f -> %.3f %s (%+.1f%%)", verdict, e.getKey(),
+                    then.value, now.value, now.unit, 100 * change));
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions
+                    + " benchmark(s) regressed by more than "
+                    + (int) (100 * threshold) + "%");
+            System.exit(1);
+        }
+    }
+
+    // keyed by benchmark name and the parameters it has, by name, so that
+    // files with other benchmarks in them still match
+    private static Map<String, Score> read(String file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            List<String> header = split(in.readLine());
+            int benchmark = header.indexOf("Benchmark");
+            int mode = header.indexOf("Mode");
+            int score = header.indexOf("Score");
+            int error = header.indexOf("Score Error (99.9%)");
+            int unit = header.indexOf("Unit");
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                List<String> f = split(line);
+                Map<String, String> params = new TreeMap<String, String>();
+                for (int i = 0; i < header.size(); i++) {
+                    if (header.get(i).startsWith("Param: ")
+                            && f.get(i).length() > 0) {
+                        params.put(header.get(i).substring(7), f.get(i));
+                    }
+                }
+                StringBuilder key = new StringBuilder(f.get(benchmark));
+                for (Map.Entry<String, String> e : params.entrySet()) {
+                    key.append(' ').append(e.getKey()).append('=').append(
+                            e.getValue());
+                }
+
+                Score s = new Score();
+                s.mode = f.get(mode);
+                s.value = Double.parseDouble(f.get(score));
+                if (error != -1 && f.get(error).length() > 0
+                        && !f.get(error).equals("NaN")) {
+                    s.error = Double.parseDouble(f.get(error));
+                }
+                s.unit = f.get(unit);
+                scores.put(key.toString(), s);
+            }
+        } finally {
+            in.close();
+        }
+        return scores;
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length()
+                        && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+}
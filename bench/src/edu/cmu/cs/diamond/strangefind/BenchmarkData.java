@@ -0,0 +1,100 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferUShort;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks.
+ */
+public class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    /**
+     * Returns n results carrying the given descriptors and circles, as the
+     * synthetic backend makes them.
+     */
+    public static List<SearchResult> createResults(String names[], int n,
+            int circles) throws IOException, InterruptedException {
+        SyntheticBackend b = new SyntheticBackend();
+        b.setServers(1);
+        b.setObjectsPerSecond(0);
+        b.setLatencyMillis(0);
+        b.setCirclesPerImage(circles);
+        // let almost everything through
+        b.setSigma(0.01);
+        b.setMinCount(0);
+
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        ResultSource s = b.createSearch(names);
+        try {
+            SearchResult r;
+            while (results.size() < n && (r = s.getNextResult()) != null) {
+                results.add(r);
+            }
+        } finally {
+            s.close();
+        }
+        return results;
+    }
+
+    /**
+     * Returns a 16-bit grayscale image with noise in the lower 12 bits, like
+     * raw microscope channels.
+     */
+    public static BufferedImage createChannel(int w, int h, long seed) {
+        BufferedImage img = new BufferedImage(w, h,
+                BufferedImage.TYPE_USHORT_GRAY);
+        short data[] = ((DataBufferUShort) img.getRaster().getDataBuffer())
+                .getData();
+        Random r = new Random(seed);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (short) (r.nextInt(4096));
+        }
+        return img;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cmu.cs.diamond.opendiamond.Util;
+
+/**
+ * Channel combining, contrast normalization and thumbnail scaling, on
+ * images the size of those from the microscopes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ImageBenchmark {
+    @Param( { "1024", "2048" })
+    public int size;
+
+    private BufferedImage channels[];
+
+    private BufferedImage combined;
+
+    private ThumbnailScaler scaler;
+
+    @Setup
+    public void setUp() {
+        channels = new BufferedImage[3];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = BenchmarkData.createChannel(size, size, i);
+        }
+        combined = AnnotatedResult.combineImage(channels[0], channels[1],
+                channels[2]);
+        scaler = new ThumbnailScaler(ResultViewer.getPreferredWidth(),
+                ResultViewer.getPreferredHeight(), 4);
+    }
+
+    @Benchmark
+    public BufferedImage combineImage() {
+        return AnnotatedResult.combineImage(channels[0], channels[1],
+                channels[2]);
+    }
+
+    /**
+     * What ResultViewer.normalize does the first time an image is shown.
+     */
+    @Benchmark
+    public BufferedImage normalizeFirst() {
+        // no key, so the histogram is not cached
+        return AutoContrast.apply(channels[0], null);
+    }
+
+    /**
+     * What ResultViewer.normalize does on channel switches.
+     */
+    @Benchmark
+    public BufferedImage normalizeAgain() {
+        return AutoContrast.apply(channels[0], "bench/0");
+    }
+
+    @Benchmark
+    public BufferedImage scaleThumbnail() {
+        double scale = Util.getScaleForResize(size, size, ResultViewer
+                .getPreferredWidth(), ResultViewer.getPreferredHeight());
+        BufferedImage t = scaler.scale(combined, scale);
+        scaler.release(t);
+        return t;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.swing.JButton;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import edu.cmu.cs.diamond.strangefind.search.CircleAnomalyFilter;
+
+/**
+ * Runs the ThumbnailBox result path headless against the synthetic
+ * backend, pressing Next as soon as each page is full, and reports
+ * sustained throughput, time to first result, page fill latency and peak
+ * heap, the most heap in use at any of the polls, once a millisecond.
+ * <p>
+ * Arguments are name=value pairs: rows, cols, image (WxH), decorator
+ * (circle or none), results (stop after this many), servers, rate (objects
+ * per second per server, 0 for no limit), latency (ms), label, and out (CSV
+ * file to append a row to).
+ */
+public class ThroughputHarness {
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        Map<String, String> p = new LinkedHashMap<String, String>();
+        p.put("label", "");
+        p.put("rows", "3");
+        p.put("cols", "3");
+        p.put("image", "1024x768");
+        p.put("decorator", "circle");
+        p.put("results", "5000");
+        p.put("servers", "8");
+        p.put("rate", "0");
+        p.put("latency", "0");
+        for (String a : args) {
+            int i = a.indexOf('=');
+            if (i == -1 || !p.containsKey(a.substring(0, i))
+                    && !a.startsWith("out=")) {
+                System.err.println("unknown argument " + a + ", known: "
+                        + p.keySet() + ", out");
+                System.exit(2);
+            }
+            p.put(a.substring(0, i), a.substring(i + 1));
+        }
+        String out = p.remove("out");
+
+        Map<String, Object> report = new LinkedHashMap<String, Object>(p);
+        report.putAll(run(p));
+
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, Object> e : report.entrySet()) {
+            line.append(e.getKey()).append('=').append(e.getValue())
+                    .append(' ');
+        }
+        System.out.println(line.toString().trim());
+
+        if (out != null) {
+            append(new File(out), report);
+        }
+
+        System.exit(0);
+    }
+
+    private static Map<String, Object> run(Map<String, String> p)
+            throws Exception {
+        int rows = Integer.parseInt(p.get("rows"));
+        int cols = Integer.parseInt(p.get("cols"));
+        String size[] = p.get("image").split("x");
+        int target = Integer.parseInt(p.get("results"));
+
+        SyntheticBackend backend = new SyntheticBackend(System
+                .getProperties());
+        backend.setServers(Integer.parseInt(p.get("servers")));
+        backend.setObjectsPerServer(Integer.MAX_VALUE);
+        backend.setObjectsPerSecond(Double.parseDouble(p.get("rate")));
+        backend.setLatencyMillis(Integer.parseInt(p.get("latency")));
+        backend.setImageSize(Integer.parseInt(size[0]), Integer
+                .parseInt(size[1]));
+
+        CircleAnomalyFilter filter = new CircleAnomalyFilter();
+
+        final JButton startButton = new JButton();
+        JButton stopButton = new JButton();
+        final ThumbnailBox box = new ThumbnailBox(rows, cols,
+                new TreeMap<String, Double>(), new AbstractTableModel() {
+                    public int getColumnCount() {
+                        return 2;
+                    }
+
+                    public int getRowCount() {
+                        return 0;
+                    }
+
+                    public Object getValueAt(int rowIndex, int columnIndex) {
+                        return null;
+                    }
+                }, stopButton, startButton);
+        box.setAnnotator(filter.getAnnotator());
+        if (p.get("decorator").equals("circle")) {
+            box.setDecorator(filter.getDecorator());
+        }
+        box.setDescriptorNames(filter.getDescriptorNames());
+
+        final ResultSource source = backend.createSearch(filter
+                .getDescriptorNames());
+
+        PipelineMetrics metrics = PipelineMetrics.getInstance();
+        metrics.reset();
+
+        // sampled, since the pools each peak at a different time
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long peakHeap = memory.getHeapMemoryUsage().getUsed();
+
+        startButton.setEnabled(false);
+        long start = System.nanoTime();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                box.start(source);
+            }
+        });
+
+        long firstResult = -1;
+        long pageStart = start;
+        List<Long> pageFill = new ArrayList<Long>();
+        long prepared = 0;
+
+        // the buttons are only read and pressed on the AWT thread:
+        // [0] search finished, [1] Next was pressed
+        final boolean state[] = new boolean[2];
+        Runnable poll = new Runnable() {
+            public void run() {
+                state[0] = startButton.isEnabled();
+                state[1] = box.nextButton.isEnabled();
+                if (state[1]) {
+                    // page is full and the next result is waiting
+                    box.nextButton.doClick(0);
+                }
+            }
+        };
+
+        while (prepared < target && !state[0]) {
+            Thread.sleep(1);
+            long now = System.nanoTime();
+
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage()
+                    .getUsed());
+
+            prepared = metrics.get("results.prepared");
+            if (firstResult == -1 && prepared > 0) {
+                firstResult = now - start;
+            }
+
+            SwingUtilities.invokeAndWait(poll);
+            if (state[1]) {
+                pageFill.add(now - pageStart);
+                pageStart = now;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        box.stop();
+
+        Collections.sort(pageFill);
+
+        Map<String, Object> r = new LinkedHashMap<String, Object>();
+        r.put("prepared", prepared);
+        r.put("seconds", format(elapsed / 1e9));
+        r.put("results_per_sec", format(prepared / (elapsed / 1e9)));
+        r.put("first_result_ms", format(firstResult / 1e6));
+        r.put("pages", pageFill.size());
+        r.put("page_fill_p50_ms", format(percentile(pageFill, 0.5) / 1e6));
+        r.put("page_fill_p90_ms", format(percentile(pageFill, 0.9) / 1e6));
+        r.put("page_fill_p99_ms", format(percentile(pageFill, 0.99) / 1e6));
+        r.put("page_fill_max_ms", format(percentile(pageFill, 1) / 1e6));
+        r.put("peak_heap_mb", peakHeap >> 20);
+        return r;
+    }
+
+    private static double percentile(List<Long> sorted, double q) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        int i = (int) Math.ceil(q * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, i)));
+    }
+
+    private static String format(double d) {
+        return String.format("%.2f", d);
+    }
+
+    private static void append(File f, Map<String, Object> report)
+            throws IOException {
+        boolean header = !f.exists() || f.length() == 0;
+        Writer w = new FileWriter(f, true);
+        try {
+            if (header) {
+                w.write(join(report.keySet()));
+            }
+            w.write(join(report.values()));
+        } finally {
+            w.close();
+        }
+    }
+
+    private static String join(Iterable<?> values) {
+        StringBuilder sb = new StringBuilder();
+        String separator = "";
+        for (Object o : values) {
+            sb.append(separator).append(o);
+            separator = ",";
+        }
+        return sb.append('\n').toString();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cmu.cs.diamond.strangefind.Annotator;
+import edu.cmu.cs.diamond.strangefind.BenchmarkData;
+import edu.cmu.cs.diamond.strangefind.SearchResult;
+import edu.cmu.cs.diamond.strangefind.StrangeFindSearch;
+
+/**
+ * The five annotations ThumbnailBox asks for, per result. XQuery is left
+ * out, its constructor asks for an attribute map in a file dialog.
+ * <p>
+ * AnomalyDescriptorView keeps the decoded view of each result, so every
+ * invocation wraps its result in a new one: the first annotation decodes
+ * the descriptors and the other four read the cached view, as when a
+ * result is shown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AnnotatorBenchmark {
+    @Param( { "circle", "oomuscle", "neurite" })
+    public String search;
+
+    private Annotator annotator;
+
+    private List<SearchResult> results;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        StrangeFindSearch s;
+        if (search.equals("circle")) {
+            s = new CircleAnomalyFilter();
+        } else if (search.equals("oomuscle")) {
+            s = new OOMuscleAnomalyFilter();
+        } else {
+            s = new NeuriteAnomalyFilter();
+        }
+
+        annotator = s.getAnnotator();
+        results = BenchmarkData.createResults(s.getDescriptorNames(), 256,
+                0);
+    }
+
+    @Benchmark
+    public void annotate(Blackhole bh) {
+        SearchResult r = new FreshResult(results.get(next));
+        next = (next + 1) % results.size();
+
+        bh.consume(annotator.annotate(r));
+        bh.consume(annotator.annotateNonHTML(r));
+        bh.consume(annotator.annotateTooltip(r));
+        bh.consume(annotator.annotateOneLine(r));
+        bh.consume(annotator.annotateVerbose(r));
+    }
+
+    // a result the descriptor view cache has not seen
+    private static class FreshResult implements SearchResult {
+        final private SearchResult r;
+
+        FreshResult(SearchResult r) {
+            this.r = r;
+        }
+
+        public byte[] getValue(String key) {
+            return r.getValue(key);
+        }
+
+        public Set<String> getKeys() {
+            return r.getKeys();
+        }
+
+        public byte[] getData() {
+            return r.getData();
+        }
+
+        public String getName() {
+            return r.getName();
+        }
+
+        public String getServerName() {
+            return r.getServerName();
+        }
+
+        public String getObjectKey() {
+            return r.getObjectKey();
+        }
+    }
+}
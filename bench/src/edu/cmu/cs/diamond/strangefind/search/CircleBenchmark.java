@@ -0,0 +1,147 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cmu.cs.diamond.strangefind.AnnotatedResult;
+import edu.cmu.cs.diamond.strangefind.BenchmarkData;
+import edu.cmu.cs.diamond.strangefind.Decorator;
+import edu.cmu.cs.diamond.strangefind.SearchResult;
+import edu.cmu.cs.diamond.strangefind.search.CircleAnomalyFilter.Circle;
+import edu.cmu.cs.diamond.strangefind.search.CircleAnomalyFilter.CircleFill;
+
+/**
+ * Decoding and drawing circle-data, on a thumbnail-sized and on a
+ * full-sized canvas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CircleBenchmark {
+    @Param( { "100", "2000" })
+    public int circles;
+
+    @Param( { "0.2", "1.0" })
+    public double scale;
+
+    private CircleAnomalyFilter filter;
+
+    private Decorator decorator;
+
+    private AnnotatedResult result;
+
+    private byte data[];
+
+    private List<Circle> decoded;
+
+    private BufferedImage canvas;
+
+    private Graphics2D g;
+
+    @Setup
+    public void setUp() throws Exception {
+        filter = new CircleAnomalyFilter();
+        decorator = filter.getDecorator();
+
+        SearchResult r = BenchmarkData.createResults(
+                filter.getDescriptorNames(), 1, circles).get(0);
+        result = new AnnotatedResult(r, null, null, null, null, null,
+                decorator);
+        data = r.getValue("circle-data");
+        decoded = CircleAnomalyFilter.extractCircles(data);
+
+        canvas = new BufferedImage(1024, 768, BufferedImage.TYPE_INT_RGB);
+        g = canvas.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public List<Circle> extractCircles() {
+        return CircleAnomalyFilter.extractCircles(data);
+    }
+
+    @Benchmark
+    public CircleData decodeCircleData() {
+        return CircleData.decode(data);
+    }
+
+    @Benchmark
+    public void drawCircle() {
+        for (Circle c : decoded) {
+            filter.drawCircle(g, c, scale,
+                    c.inResult ? CircleFill.CIRCLE_FILL_SOLID
+                            : CircleFill.CIRCLE_FILL_DASHED);
+        }
+    }
+
+    /**
+     * Drawing through the decorator, with the shapes cached after the first
+     * call.
+     */
+    @Benchmark
+    public void decorate() {
+        decorator.decorate(result, g, scale);
+    }
+}
@@ -44,17 +44,18 @@ import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferUShort;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Set;
 
 import javax.imageio.ImageIO;
 
-import edu.cmu.cs.diamond.opendiamond.Result;
 import edu.cmu.cs.diamond.opendiamond.Util;
 
 public class AnnotatedResult {
-    final private Result theResult;
+    final private SearchResult theResult;
 
     final private String annotation;
 
@@ -72,19 +73,20 @@ public class AnnotatedResult {
 
     private BufferedImage combinedImage;
 
-    final private String verboseAnnotation;
+    // the verbose text can need the object body, which results come without
+    final private Annotator verboseAnnotator;
 
     final private String nonHTMLAnnotation;
 
-    public AnnotatedResult(Result r, String annotation,
+    public AnnotatedResult(SearchResult r, String annotation,
             String nonHTMLAnnotation, String oneLineAnnotation,
-            String tooltipAnnotation, String verboseAnnotation,
+            String tooltipAnnotation, Annotator verboseAnnotator,
             Decorator decorator) {
         theResult = r;
         this.annotation = annotation;
         this.tooltipAnnotation = tooltipAnnotation;
         this.oneLineAnnotation = oneLineAnnotation;
-        this.verboseAnnotation = verboseAnnotation;
+        this.verboseAnnotator = verboseAnnotator;
         this.nonHTMLAnnotation = nonHTMLAnnotation;
         this.decorator = decorator;
     }
@@ -99,6 +101,10 @@ public class AnnotatedResult {
         }
     }
 
+    public boolean hasDecorator() {
+        return decorator != null;
+    }
+
     public String getTooltipAnnotation() {
         return tooltipAnnotation;
     }
@@ -135,7 +141,48 @@ public class AnnotatedResult {
         return new BufferedImage[] { combinedImage, img1, img2, img3 };
     }
 
-    static private BufferedImage combineImage(BufferedImage img1,
+    /**
+     * Loads a small combined image from the image server, decoding each
+     * channel subsampled to about width x height. Returns null on failure.
+     */
+    public SubsampledReader.Decoded getThumbnailByHTTP(int width, int height) {
+        String image1 = Util.extractString(theResult.getValue("image-1"));
+        String image2 = Util.extractString(theResult.getValue("image-2"));
+        String image3 = Util.extractString(theResult.getValue("image-3"));
+
+        try {
+            SubsampledReader.Decoded d1 = readByHTTP(image1, width, height);
+            SubsampledReader.Decoded d2 = readByHTTP(image2, width, height);
+            SubsampledReader.Decoded d3 = readByHTTP(image3, width, height);
+
+            if (d1 == null || d2 == null || d3 == null) {
+                return null;
+            }
+
+            return new SubsampledReader.Decoded(combineImage(d1.img, d2.img,
+                    d3.img), d1.scale);
+        } catch (URISyntaxException e) {
+            e.printStackTrace();
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            // e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    static private SubsampledReader.Decoded readByHTTP(String image,
+            int width, int height) throws URISyntaxException, IOException {
+        InputStream in = createImageURI(image).toURL().openStream();
+        try {
+            return SubsampledReader.read(in, width, height);
+        } finally {
+            in.close();
+        }
+    }
+
+    static BufferedImage combineImage(BufferedImage img1,
             BufferedImage img2, BufferedImage img3) {
         DataBufferUShort b1 = (DataBufferUShort) img1.getRaster()
                 .getDataBuffer();
@@ -179,8 +226,40 @@ public class AnnotatedResult {
         return oneLineAnnotation;
     }
 
-    public String getVerboseAnnotation() {
-        return verboseAnnotation;
+    /**
+     * Returns the verbose annotation, made from the result as if its body
+     * were data. Call this only when the text is wanted, as the caller has
+     * to fetch the body first.
+     */
+    public String getVerboseAnnotation(final byte data[]) {
+        if (verboseAnnotator == null) {
+            return null;
+        }
+        return verboseAnnotator.annotateVerbose(new SearchResult() {
+            public byte[] getValue(String key) {
+                return theResult.getValue(key);
+            }
+
+            public Set<String> getKeys() {
+                return theResult.getKeys();
+            }
+
+            public byte[] getData() {
+                return data;
+            }
+
+            public String getName() {
+                return theResult.getName();
+            }
+
+            public String getServerName() {
+                return theResult.getServerName();
+            }
+
+            public String getObjectKey() {
+                return theResult.getObjectKey();
+            }
+        });
     }
 
     public String getAnnotationNonHTML() {
@@ -195,7 +274,7 @@ public class AnnotatedResult {
         return theResult.getValue(key);
     }
 
-    Result getResult() {
+    SearchResult getResult() {
         return theResult;
     }
 }
@@ -40,16 +40,14 @@
 
 package edu.cmu.cs.diamond.strangefind;
 
-import edu.cmu.cs.diamond.opendiamond.Result;
-
 public interface Annotator {
-    String annotateVerbose(Result r);
+    String annotateVerbose(SearchResult r);
 
-    String annotate(Result r);
+    String annotate(SearchResult r);
 
-    String annotateTooltip(Result r);
+    String annotateTooltip(SearchResult r);
 
-    String annotateOneLine(Result r);
+    String annotateOneLine(SearchResult r);
 
-    String annotateNonHTML(Result r);
+    String annotateNonHTML(SearchResult r);
 }
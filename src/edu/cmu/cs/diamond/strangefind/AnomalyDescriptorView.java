@@ -0,0 +1,238 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import edu.cmu.cs.diamond.opendiamond.Util;
+
+/**
+ * The anomaly-descriptor-* attributes written by fil_anomaly, decoded once
+ * per result into primitive arrays.
+ */
+public class AnomalyDescriptorView {
+    private static final String PREFIX = "anomaly-descriptor-";
+
+    private static final int VALUE = 0;
+
+    private static final int MEAN = 1;
+
+    private static final int STDDEV = 2;
+
+    private static final int COUNT = 3;
+
+    private static final int IS_ANOMALOUS = 4;
+
+    private static final String KINDS[][] = { { "value-", ".double" },
+            { "mean-", ".double" }, { "stddev-", ".double" },
+            { "count-", ".int" }, { "is_anomalous-", ".int" } };
+
+    // [kind][descriptor], interned, grown on demand
+    private static volatile String keys[][] = new String[KINDS.length][0];
+
+    private static final Map<SearchResult, AnomalyDescriptorView> views = Collections
+            .synchronizedMap(new WeakHashMap<SearchResult, AnomalyDescriptorView>());
+
+    final private double value[];
+
+    final private double mean[];
+
+    final private double stddev[];
+
+    final private int count[];
+
+    final private boolean isAnomalous[];
+
+    private AnomalyDescriptorView(SearchResult r, int n) {
+        String k[][] = getKeys(n);
+
+        value = new double[n];
+        mean = new double[n];
+        stddev = new double[n];
+        count = new int[n];
+        isAnomalous = new boolean[n];
+
+        for (int i = 0; i < n; i++) {
+            value[i] = Util.extractDouble(r.getValue(k[VALUE][i]));
+            mean[i] = Util.extractDouble(r.getValue(k[MEAN][i]));
+            stddev[i] = Util.extractDouble(r.getValue(k[STDDEV][i]));
+            count[i] = Util.extractInt(r.getValue(k[COUNT][i]));
+            isAnomalous[i] = Util.extractInt(r
+                    .getValue(k[IS_ANOMALOUS][i])) == 1;
+        }
+    }
+
+    // descriptor i of this view is descriptor indices[i] of v
+    private AnomalyDescriptorView(AnomalyDescriptorView v, int indices[]) {
+        int n = indices.length;
+
+        value = new double[n];
+        mean = new double[n];
+        stddev = new double[n];
+        count = new int[n];
+        isAnomalous = new boolean[n];
+
+        for (int i = 0; i < n; i++) {
+            int j = indices[i];
+            value[i] = v.value[j];
+            mean[i] = v.mean[j];
+            stddev[i] = v.stddev[j];
+            count[i] = v.count[j];
+            isAnomalous[i] = v.isAnomalous[j];
+        }
+    }
+
+    /**
+     * Returns a view of at least the first n descriptors of r, decoding it
+     * on first use.
+     */
+    public static AnomalyDescriptorView get(SearchResult r, int n) {
+        AnomalyDescriptorView v = views.get(r);
+        if (v == null || v.size() < n) {
+            v = new AnomalyDescriptorView(r, n);
+            views.put(r, v);
+        }
+        return v;
+    }
+
+    /**
+     * Returns the view of the descriptors of r at the given indices, so that
+     * descriptor i of the view is descriptor indices[i] of r. This is how a
+     * search run together with others reads its own descriptors.
+     */
+    public static AnomalyDescriptorView get(SearchResult r, int indices[]) {
+        int n = 0;
+        boolean own = true;
+        for (int i = 0; i < indices.length; i++) {
+            n = Math.max(n, indices[i] + 1);
+            own &= indices[i] == i;
+        }
+
+        AnomalyDescriptorView v = get(r, n);
+        return own ? v : new AnomalyDescriptorView(v, indices);
+    }
+
+    /**
+     * Adds the attribute names of the first n descriptors to set.
+     */
+    public static void addKeys(Set<String> set, int n) {
+        String k[][] = getKeys(n);
+        for (int i = 0; i < n; i++) {
+            for (String kind[] : k) {
+                set.add(kind[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds the attribute names of the descriptors at the given indices to
+     * set.
+     */
+    public static void addKeys(Set<String> set, int indices[]) {
+        int n = 0;
+        for (int i : indices) {
+            n = Math.max(n, i + 1);
+        }
+
+        String k[][] = getKeys(n);
+        for (int i : indices) {
+            for (String kind[] : k) {
+                set.add(kind[i]);
+            }
+        }
+    }
+
+    private static String[][] getKeys(int n) {
+        String k[][] = keys;
+        if (k[0].length >= n) {
+            return k;
+        }
+
+        synchronized (AnomalyDescriptorView.class) {
+            k = keys;
+            if (k[0].length < n) {
+                String newKeys[][] = new String[KINDS.length][n];
+                for (int kind = 0; kind < KINDS.length; kind++) {
+                    for (int i = 0; i < n; i++) {
+                        newKeys[kind][i] = (PREFIX + KINDS[kind][0] + i
+                                + KINDS[kind][1]).intern();
+                    }
+                }
+                keys = k = newKeys;
+            }
+        }
+        return k;
+    }
+
+    public int size() {
+        return value.length;
+    }
+
+    public double getValue(int descriptor) {
+        return value[descriptor];
+    }
+
+    public double getMean(int descriptor) {
+        return mean[descriptor];
+    }
+
+    public double getStddev(int descriptor) {
+        return stddev[descriptor];
+    }
+
+    /**
+     * Returns how many standard deviations the value is from the mean.
+     */
+    public double getDeviation(int descriptor) {
+        return (value[descriptor] - mean[descriptor]) / stddev[descriptor];
+    }
+
+    public int getCount(int descriptor) {
+        return count[descriptor];
+    }
+
+    public boolean isAnomalous(int descriptor) {
+        return isAnomalous[descriptor];
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Percentile-based window/level for 16-bit grayscale images. The histogram
+ * of each image is computed in parallel, and kept for the most recently used
+ * keys, so an image decoded again, such as a channel shown again, is not
+ * counted again.
+ */
+public class AutoContrast {
+    private static final double LOW_PERCENTILE = 0.005;
+
+    private static final double HIGH_PERCENTILE = 0.995;
+
+    private static final int LEVELS = 1 << 16;
+
+    // below this many pixels, splitting the work is not worth it
+    private static final int PARALLEL_THRESHOLD = 256 * 256;
+
+    private static final int THREADS = Runtime.getRuntime()
+            .availableProcessors();
+
+    private static final ExecutorService executor = Executors
+            .newFixedThreadPool(THREADS, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "AutoContrast");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    // a histogram and table are about 320 KB
+    private static final int WINDOW_CACHE_SIZE = 32;
+
+    private static final Map<String, Window> windows = Collections
+            .synchronizedMap(new LinkedHashMap<String, Window>(16, 0.75f,
+                    true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Window> eldest) {
+                    return size() > WINDOW_CACHE_SIZE;
+                }
+            });
+
+    private static class Window {
+        final int histogram[];
+
+        final byte lut[];
+
+        Window(int histogram[], int pixels) {
+            this.histogram = histogram;
+
+            int low = findPercentile(histogram, (long) (pixels * LOW_PERCENTILE));
+            int high = findPercentile(histogram,
+                    (long) (pixels * HIGH_PERCENTILE));
+            if (high <= low) {
+                high = Math.min(low + 1, LEVELS - 1);
+                low = high - 1;
+            }
+
+            lut = new byte[LEVELS];
+            double range = high - low;
+            for (int i = 0; i < LEVELS; i++) {
+                if (i <= low) {
+                    lut[i] = 0;
+                } else if (i >= high) {
+                    lut[i] = (byte) 255;
+                } else {
+                    lut[i] = (byte) ((i - low) * 255.0 / range);
+                }
+            }
+        }
+
+        private static int findPercentile(int histogram[], long rank) {
+            long sum = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                sum += histogram[i];
+                if (sum > rank) {
+                    return i;
+                }
+            }
+            return histogram.length - 1;
+        }
+    }
+
+    // one row range of the source image
+    private abstract static class Band<T> implements Callable<T> {
+        final short src[];
+
+        final int offset;
+
+        final int stride;
+
+        final int width;
+
+        final int y0;
+
+        final int y1;
+
+        Band(short src[], int offset, int stride, int width, int y0, int y1) {
+            this.src = src;
+            this.offset = offset;
+            this.stride = stride;
+            this.width = width;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+    }
+
+    private AutoContrast() {
+    }
+
+    public static boolean canApply(BufferedImage img) {
+        return img.getType() == BufferedImage.TYPE_USHORT_GRAY
+                && img.getRaster().getDataBuffer() instanceof DataBufferUShort
+                && img.getSampleModel() instanceof ComponentSampleModel;
+    }
+
+    /**
+     * Returns the 16-bit histogram of a grayscale image, cached under key
+     * unless it is null. The key names the pixels, whatever object holds
+     * them: the object key and channel, say.
+     */
+    public static int[] getHistogram(BufferedImage img, String key) {
+        return getWindow(img, key).histogram;
+    }
+
+    /**
+     * Maps a 16-bit grayscale image into a new 8-bit grayscale image, in one
+     * pass through the lookup table cached under key, see getHistogram.
+     */
+    public static BufferedImage apply(BufferedImage img, String key) {
+        final byte lut[] = getWindow(img, key).lut;
+
+        final int w = img.getWidth();
+        final int h = img.getHeight();
+        BufferedImage result = new BufferedImage(w, h,
+                BufferedImage.TYPE_BYTE_GRAY);
+        final byte dst[] = ((DataBufferByte) result.getRaster()
+                .getDataBuffer()).getData();
+
+        List<Band<Object>> bands = new ArrayList<Band<Object>>();
+        for (int[] range : splitRows(w, h)) {
+            bands.add(new Band<Object>(getData(img), getOffset(img),
+                    getStride(img), w, range[0], range[1]) {
+                public Object call() {
+                    for (int y = y0; y < y1; y++) {
+                        int in = offset + y * stride;
+                        int out = y * width;
+                        for (int x = 0; x < width; x++) {
+                            dst[out + x] = lut[src[in + x] & 0xFFFF];
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(bands);
+
+        return result;
+    }
+
+    private static Window getWindow(BufferedImage img, String key) {
+        Window win = key == null ? null : windows.get(key);
+        if (win == null) {
+            win = new Window(computeHistogram(img), img.getWidth()
+                    * img.getHeight());
+            if (key != null) {
+                windows.put(key, win);
+            }
+        }
+        return win;
+    }
+
+    private static int[] computeHistogram(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+
+        List<Band<int[]>> bands = new ArrayList<Band<int[]>>();
+        for (int[] range : splitRows(w, h)) {
+            bands.add(new Band<int[]>(getData(img), getOffset(img),
+                    getStride(img), w, range[0], range[1]) {
+                public int[] call() {
+                    int hist[] = new int[LEVELS];
+                    for (int y = y0; y < y1; y++) {
+                        int in = offset + y * stride;
+                        for (int x = 0; x < width; x++) {
+                            hist[src[in + x] & 0xFFFF]++;
+                        }
+                    }
+                    return hist;
+                }
+            });
+        }
+
+        List<int[]> partials = invokeAll(bands);
+        int result[] = partials.get(0);
+        for (int i = 1; i < partials.size(); i++) {
+            int p[] = partials.get(i);
+            for (int j = 0; j < LEVELS; j++) {
+                result[j] += p[j];
+            }
+        }
+        return result;
+    }
+
+    private static List<int[]> splitRows(int w, int h) {
+        int n = 1;
+        if ((long) w * h >= PARALLEL_THRESHOLD) {
+            n = Math.min(THREADS, h);
+        }
+
+        List<int[]> ranges = new ArrayList<int[]>();
+        for (int i = 0; i < n; i++) {
+            ranges.add(new int[] { h * i / n, h * (i + 1) / n });
+        }
+        return ranges;
+    }
+
+    private static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>();
+        try {
+            if (tasks.size() == 1) {
+                results.add(tasks.get(0).call());
+                return results;
+            }
+            for (Future<T> f : executor.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return results;
+    }
+
+    private static short[] getData(BufferedImage img) {
+        return ((DataBufferUShort) img.getRaster().getDataBuffer()).getData();
+    }
+
+    private static int getStride(BufferedImage img) {
+        return ((ComponentSampleModel) img.getSampleModel())
+                .getScanlineStride();
+    }
+
+    private static int getOffset(BufferedImage img) {
+        WritableRaster r = img.getRaster();
+        SampleModel sm = r.getSampleModel();
+        return r.getDataBuffer().getOffset()
+                + ((ComponentSampleModel) sm).getOffset(-r
+                        .getSampleModelTranslateX(), -r
+                        .getSampleModelTranslateY());
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.cmu.cs.diamond.opendiamond.CookieMap;
+import edu.cmu.cs.diamond.opendiamond.SearchClosedException;
+import edu.cmu.cs.diamond.opendiamond.SearchFactory;
+import edu.cmu.cs.diamond.strangefind.search.FilterArguments;
+
+/**
+ * Runs the searches of a search configuration without a display and writes
+ * each result to a file or standard output as it arrives. Results are
+ * written by the thread that takes them from the servers, so a slow reader
+ * slows the search down instead of filling memory.
+ * <p>
+ * Arguments are name=value pairs: config (the search configuration, see
+ * SearchConfiguration), out (a file, or - for standard output, the
+ * default), format (ndjson, csv or columnar; by default from the name of
+ * out, ndjson for standard output), sync (seconds between session variable
+ * merges, 0 for never), variables (session variables as saved from the
+ * Session Variables window, loaded before the search and saved after it),
+ * limit (stop after this many results, 0 for no limit), synthetic (true
+ * to run against simulated servers) and every. The scope is the default
+ * cookie map.
+ * <p>
+ * With every set to a number of seconds the search runs continuously: it
+ * starts again that often after the start of the last round, reading the
+ * scope anew, and reports only objects no earlier round or run of the same
+ * searches has reported. The anomaly stage keeps one nonce for the whole
+ * run, so in later rounds the servers answer it from their cache for the
+ * objects an earlier round evaluated, and only objects new to the scope are
+ * judged and counted in the session variables. Each round adds what it
+ * learns to the session variables the next round starts from and that are
+ * saved at the end. An object a server no longer has cached is evaluated
+ * and counted again; the seen set still keeps it from being reported
+ * twice.
+ */
+public class BatchSearch {
+    private static volatile boolean shuttingDown;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        Map<String, String> p = new LinkedHashMap<String, String>();
+        p.put("config", null);
+        p.put("out", "-");
+        p.put("format", null);
+        p.put("sync", Integer
+                .toString(StrangeFind.INITIAL_SESSION_VARIABLES_UPDATE_INTERVAL));
+        p.put("variables", null);
+        p.put("limit", "0");
+        p.put("every", "0");
+        p.put("synthetic", "false");
+        for (String a : args) {
+            int i = a.indexOf('=');
+            if (i == -1 || !p.containsKey(a.substring(0, i))) {
+                System.err.println("unknown argument " + a + ", known: "
+                        + p.keySet());
+                System.exit(2);
+            }
+            p.put(a.substring(0, i), a.substring(i + 1));
+        }
+        if (p.get("config") == null) {
+            System.err.println("no config given");
+            System.exit(2);
+        }
+
+        // the filters print as they are made; keep that out of the results
+        PrintStream stdout = System.out;
+        if (p.get("out").equals("-")) {
+            System.setOut(System.err);
+        }
+
+        int status;
+        try {
+            status = run(p, stdout);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            status = 2;
+        }
+
+        if (!shuttingDown) {
+            System.exit(status);
+        }
+    }
+
+    private static int run(Map<String, String> p, PrintStream stdout)
+            throws IOException, InterruptedException {
+        List<StrangeFindSearch> searches = SearchConfiguration.read(new File(p
+                .get("config")));
+        String names[] = SearchList.getDescriptorNames(searches);
+        String digest = SearchConfiguration.getDigest(searches);
+        System.err.println("searches " + digest);
+
+        final Map<String, Double> sessionVariables = new TreeMap<String, Double>();
+        File variablesFile = null;
+        if (p.get("variables") != null) {
+            variablesFile = new File(p.get("variables"));
+            if (variablesFile.isFile()) {
+                loadVariables(variablesFile, sessionVariables);
+            }
+        }
+
+        long every = Long.parseLong(p.get("every"));
+        long limit = Long.parseLong(p.get("limit"));
+        boolean synthetic = Boolean.parseBoolean(p.get("synthetic"));
+
+        // results of earlier rounds and runs of the same searches are not
+        // reported again, whatever scope they came from; the servers only
+        // evaluate objects no earlier round of this run has
+        SeenSet seen = null;
+        if (every > 0) {
+            FilterArguments.setDeterministic(true);
+            FilterArguments.setAnomalyNonce(UUID.randomUUID().toString());
+            seen = SeenSet.open(new File(LocalStorage.getDirectory("seen"),
+                    "continuous-" + digest));
+        }
+
+        final ResultExporter exporter = openExporter(p, stdout, names);
+
+        // rows are written as they arrive, so the last chunk is all that
+        // needs keeping
+        DescriptorStore descriptors = new DescriptorStore(names,
+                DescriptorStore.CHUNK_ROWS);
+
+        // stop cleanly on Ctrl-C or kill, so the output is complete
+        final Thread searchThread = Thread.currentThread();
+        Thread hook = new Thread() {
+            @Override
+            public void run() {
+                shuttingDown = true;
+                searchThread.interrupt();
+                try {
+                    searchThread.join(10000);
+                } catch (InterruptedException e) {
+                    // exiting anyway
+                }
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(hook);
+
+        final AtomicReference<ResultSource> current = new AtomicReference<ResultSource>();
+        Timer timer = new Timer(true);
+        int sync = Integer.parseInt(p.get("sync"));
+        if (sync > 0) {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    ResultSource source = current.get();
+                    if (source == null) {
+                        return;
+                    }
+                    try {
+                        source.mergeSessionVariables(sessionVariables);
+                    } catch (SearchClosedException e) {
+                        // ignore
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, 1000L * sync, 1000L * sync);
+        }
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    exporter.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, 1000, 1000);
+
+        SyntheticBackend syntheticBackend = null;
+        if (synthetic) {
+            syntheticBackend = new SyntheticBackend(System.getProperties());
+        }
+
+        long results = 0;
+        try {
+            for (int round = 1;; round++) {
+                long started = System.nanoTime();
+
+                try {
+                    // read the scope again each round, it may have grown
+                    ResultSource source;
+                    if (synthetic) {
+                        source = syntheticBackend.createSearch(names);
+                    } else {
+                        SearchFactory factory = new SearchFactory(SearchList
+                                .createFilterGraph(searches).createFilters(),
+                                CookieMap.createDefaultCookieMap());
+                        source = new DiamondSource(factory
+                                .createSearch(SearchList
+                                        .getPushAttributes(searches)), factory);
+                    }
+
+                    current.set(source);
+                    results += runRound(source, descriptors, exporter, seen,
+                            limit == 0 ? 0 : limit - results,
+                            sessionVariables, every > 0 ? round : 0);
+                } catch (IOException e) {
+                    if (every == 0) {
+                        throw e;
+                    }
+                    // servers may be back for the next round
+                    e.printStackTrace();
+                } finally {
+                    current.set(null);
+                }
+
+                if (every == 0 || (limit > 0 && results >= limit)
+                        || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                long wait = (started - System.nanoTime()) / 1000000 + 1000
+                        * every;
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+            }
+        } catch (InterruptedException e) {
+            // between rounds
+        } finally {
+            timer.cancel();
+            Thread.interrupted();
+
+            if (seen != null) {
+                seen.close();
+            }
+            exporter.close();
+
+            if (variablesFile != null) {
+                saveVariables(variablesFile, sessionVariables);
+            }
+
+            if (!shuttingDown) {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the results of source to exporter until it has no more, or
+     * until limit results if limit is not 0, and closes it. Results already
+     * in seen are left out. Returns the number of results written, with the
+     * thread interrupted if it was.
+     */
+    private static long runRound(ResultSource source,
+            DescriptorStore descriptors, ResultExporter exporter,
+            SeenSet seen, long limit, Map<String, Double> sessionVariables,
+            int round) throws IOException {
+        long results = 0;
+        long skipped = 0;
+        long started = System.nanoTime();
+        Map<String, SearchStatistics> stats = null;
+        boolean interrupted = false;
+        try {
+            // the servers start from what earlier rounds learned
+            source.mergeSessionVariables(sessionVariables);
+
+            SearchResult r;
+            while ((r = source.getNextResult()) != null) {
+                if (seen != null && !seen.add(r.getObjectKey())) {
+                    skipped++;
+                    continue;
+                }
+                exporter.write(descriptors, descriptors.append(r));
+                if (++results == limit) {
+                    break;
+                }
+            }
+        } catch (SearchClosedException e) {
+            // ignore
+        } catch (InterruptedException e) {
+            System.err.println("interrupted");
+            interrupted = true;
+        } finally {
+            Thread.interrupted();
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            // a last merge, so the saved variables cover the whole run
+            try {
+                stats = source.getStatistics();
+                source.mergeSessionVariables(sessionVariables);
+            } catch (SearchClosedException e) {
+                // ignore
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            try {
+                source.close();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            exporter.flush();
+            if (seen != null) {
+                seen.flush();
+            }
+
+            System.err.println((round > 0 ? "round " + round + ": " : "")
+                    + results + " results in " + Math.round(seconds) + " s"
+                    + (seen != null ? ", " + skipped + " seen before" : "")
+                    + describe(stats));
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return results;
+    }
+
+    private static ResultExporter openExporter(Map<String, String> p,
+            PrintStream stdout, String names[]) throws IOException {
+        String out = p.get("out");
+        String format = p.get("format");
+        if (out.equals("-")) {
+            return ResultExporter.open(stdout, format == null ? "ndjson"
+                    : format, names);
+        } else if (format == null) {
+            return ResultExporter.open(new File(out), names);
+        } else {
+            OutputStream os = new FileOutputStream(out);
+            try {
+                return ResultExporter.open(os, format, names);
+            } catch (IllegalArgumentException e) {
+                os.close();
+                throw e;
+            }
+        }
+    }
+
+    private static String describe(Map<String, SearchStatistics> stats) {
+        if (stats == null) {
+            return "";
+        }
+        long total = 0;
+        long processed = 0;
+        for (SearchStatistics s : stats.values()) {
+            total += s.getTotalObjects();
+            processed += s.getProcessedObjects();
+        }
+        return ", " + processed + " of " + total + " objects searched on "
+                + stats.size() + " servers";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void loadVariables(File f, Map<String, Double> sv)
+            throws IOException {
+        XMLDecoder d = new XMLDecoder(new BufferedInputStream(
+                new FileInputStream(f)));
+        try {
+            sv.putAll((Map<? extends String, ? extends Double>) d
+                    .readObject());
+        } finally {
+            d.close();
+        }
+    }
+
+    private static void saveVariables(File f, Map<String, Double> sv)
+            throws IOException {
+        XMLEncoder e = new XMLEncoder(new BufferedOutputStream(
+                new FileOutputStream(f)));
+        e.writeObject(sv);
+        e.close();
+    }
+}
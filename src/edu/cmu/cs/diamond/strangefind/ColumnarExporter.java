@@ -0,0 +1,178 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary column chunks, big-endian as written by DataOutputStream:
+ * 
+ * <pre>
+ * header: &quot;SFCOLS01&quot;, int n, n x UTF descriptor name
+ * chunk:  int rows (0 ends the file),
+ *         int k, k x UTF server name (servers first seen in this chunk),
+ *         rows x UTF object name,
+ *         rows x int server id (in order of first appearance),
+ *         n x (rows x double value),
+ *         n x (rows x float deviation)
+ * </pre>
+ */
+public class ColumnarExporter extends ResultExporter {
+    private static final byte MAGIC[] = { 'S', 'F', 'C', 'O', 'L', 'S', '0',
+            '1' };
+
+    public static final int CHUNK_ROWS = 4096;
+
+    final private DataOutputStream out;
+
+    final private Map<String, Integer> serverIndex = new HashMap<String, Integer>();
+
+    final private List<String> newServers = new ArrayList<String>();
+
+    final private String rowNames[] = new String[CHUNK_ROWS];
+
+    final private int serverIds[] = new int[CHUNK_ROWS];
+
+    final private double values[][];
+
+    final private float deviations[][];
+
+    private int rows;
+
+    public ColumnarExporter(File f, String descriptorNames[])
+            throws IOException {
+        this(new FileOutputStream(f), descriptorNames);
+    }
+
+    public ColumnarExporter(OutputStream os, String descriptorNames[])
+            throws IOException {
+        super(descriptorNames);
+
+        values = new double[names.length][CHUNK_ROWS];
+        deviations = new float[names.length][CHUNK_ROWS];
+
+        out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+        out.write(MAGIC);
+        out.writeInt(names.length);
+        for (String n : names) {
+            out.writeUTF(n);
+        }
+    }
+
+    @Override
+    public synchronized void write(DescriptorStore store, int row)
+            throws IOException {
+        String server = store.getServerName(row);
+        Integer id = serverIndex.get(server);
+        if (id == null) {
+            id = serverIndex.size();
+            serverIndex.put(server, id);
+            newServers.add(server);
+        }
+
+        rowNames[rows] = store.getName(row);
+        serverIds[rows] = id;
+        for (int i = 0; i < names.length; i++) {
+            values[i][rows] = store.getValue(row, i);
+            deviations[i][rows] = store.getDeviation(row, i);
+        }
+
+        if (++rows == CHUNK_ROWS) {
+            writeChunk();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        // rows only go out in whole chunks
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (rows > 0) {
+            writeChunk();
+        }
+        out.writeInt(0);
+        out.close();
+    }
+
+    private void writeChunk() throws IOException {
+        out.writeInt(rows);
+
+        out.writeInt(newServers.size());
+        for (String s : newServers) {
+            out.writeUTF(String.valueOf(s));
+        }
+        newServers.clear();
+
+        for (int i = 0; i < rows; i++) {
+            out.writeUTF(rowNames[i]);
+        }
+        for (int i = 0; i < rows; i++) {
+            out.writeInt(serverIds[i]);
+        }
+        for (double col[] : values) {
+            for (int i = 0; i < rows; i++) {
+                out.writeDouble(col[i]);
+            }
+        }
+        for (float col[] : deviations) {
+            for (int i = 0; i < rows; i++) {
+                out.writeFloat(col[i]);
+            }
+        }
+        out.flush();
+
+        Arrays.fill(rowNames, null);
+        rows = 0;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * One row per result: name, server, then value and deviation of each
+ * descriptor. Missing values are left empty.
+ */
+public class CsvExporter extends ResultExporter {
+    final private Writer out;
+
+    public CsvExporter(File f, String descriptorNames[]) throws IOException {
+        this(new FileOutputStream(f), descriptorNames);
+    }
+
+    public CsvExporter(OutputStream os, String descriptorNames[])
+            throws IOException {
+        super(descriptorNames);
+
+        out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 1 << 16);
+
+        out.write("name,server");
+        for (String n : names) {
+            out.write(',');
+            out.write(quote(n));
+            out.write(',');
+            out.write(quote(n + " sigma"));
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public synchronized void write(DescriptorStore store, int row)
+            throws IOException {
+        out.write(quote(store.getName(row)));
+        out.write(',');
+        out.write(quote(store.getServerName(row)));
+        for (int i = 0; i < names.length; i++) {
+            out.write(',');
+            writeDouble(store.getValue(row, i));
+            out.write(',');
+            writeFloat(store.getDeviation(row, i));
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void writeDouble(double v) throws IOException {
+        if (!Double.isNaN(v)) {
+            out.write(Double.toString(v));
+        }
+    }
+
+    private void writeFloat(float v) throws IOException {
+        if (!Float.isNaN(v)) {
+            out.write(Float.toString(v));
+        }
+    }
+
+    private static String quote(String s) {
+        if (s == null) {
+            return "";
+        }
+        if (s.indexOf(',') == -1 && s.indexOf('"') == -1
+                && s.indexOf('\n') == -1 && s.indexOf('\r') == -1) {
+            return s;
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+}
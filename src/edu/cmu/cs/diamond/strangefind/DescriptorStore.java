@@ -0,0 +1,279 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column store of the anomaly descriptors of received results: values,
+ * deviations in standard deviations, server and object name, one row per
+ * result. Rows are kept in chunks of primitive arrays, with server names
+ * dictionary-encoded and object names packed as UTF-8, so that a row costs
+ * a few bytes per descriptor and no result is held on to.
+ * <p>
+ * Rows are numbered in the order they were appended. The store holds at
+ * most a given number of rows; past that, the oldest chunk is dropped for
+ * each new one, and its rows can no longer be read.
+ */
+public class DescriptorStore {
+    public static final int CHUNK_ROWS = 4096;
+
+    // about 150 MB with ten descriptors
+    public static final int DEFAULT_MAX_ROWS = 1 << 20;
+
+    private static final int INITIAL_CHUNK_ROWS = 64;
+
+    private static class Chunk {
+        // [descriptor][row]
+        double values[][];
+
+        float deviations[][];
+
+        int servers[];
+
+        // name of row i is nameBytes[i == 0 ? 0 : nameEnds[i - 1] ..
+        // nameEnds[i]]
+        int nameEnds[];
+
+        byte nameBytes[];
+
+        int rows;
+
+        Chunk(int descriptors, int capacity) {
+            values = new double[descriptors][capacity];
+            deviations = new float[descriptors][capacity];
+            servers = new int[capacity];
+            nameEnds = new int[capacity];
+            nameBytes = new byte[capacity * 32];
+        }
+
+        int nameStart(int i) {
+            return i == 0 ? 0 : nameEnds[i - 1];
+        }
+
+        void grow() {
+            int capacity = Math.min(CHUNK_ROWS, servers.length * 2);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Arrays.copyOf(values[i], capacity);
+                deviations[i] = Arrays.copyOf(deviations[i], capacity);
+            }
+            servers = Arrays.copyOf(servers, capacity);
+            nameEnds = Arrays.copyOf(nameEnds, capacity);
+        }
+    }
+
+    final private String names[];
+
+    final private int maxChunks;
+
+    final private List<Chunk> chunks = new ArrayList<Chunk>();
+
+    // number of the first row still kept, a multiple of CHUNK_ROWS
+    private int firstRow;
+
+    private int size;
+
+    final private List<String> servers = new ArrayList<String>();
+
+    final private Map<String, Integer> serverIndex = new HashMap<String, Integer>();
+
+    public DescriptorStore(String descriptorNames[]) {
+        this(descriptorNames, DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * Creates a store keeping at least the last maxRows rows, rounded up to
+     * whole chunks.
+     */
+    public DescriptorStore(String descriptorNames[], int maxRows) {
+        names = descriptorNames.clone();
+        maxChunks = Math.max(1, (maxRows + CHUNK_ROWS - 1) / CHUNK_ROWS);
+    }
+
+    /**
+     * Appends the descriptors of r and returns the number of its row.
+     */
+    public int append(SearchResult r) {
+        String name = r.getName();
+        if (name == null) {
+            name = r.getObjectKey();
+        }
+        AnomalyDescriptorView d = AnomalyDescriptorView.get(r, names.length);
+
+        double values[] = new double[names.length];
+        float deviations[] = new float[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = d.getValue(i);
+            deviations[i] = (float) d.getDeviation(i);
+        }
+        return append(name, r.getServerName(), values, deviations);
+    }
+
+    /**
+     * Appends a copy of a row of another store with the same descriptors
+     * and returns the number of the new row.
+     */
+    public int append(DescriptorStore from, int row) {
+        double values[] = new double[names.length];
+        float deviations[] = new float[names.length];
+        String name;
+        String server;
+        synchronized (from) {
+            Chunk c = from.getChunk(row);
+            int i = row % CHUNK_ROWS;
+            for (int j = 0; j < names.length; j++) {
+                values[j] = c.values[j][i];
+                deviations[j] = c.deviations[j][i];
+            }
+            name = decode(c.nameBytes, c.nameStart(i), c.nameEnds[i]
+                    - c.nameStart(i));
+            server = from.servers.get(c.servers[i]);
+        }
+        return append(name, server, values, deviations);
+    }
+
+    private synchronized int append(String name, String server,
+            double values[], float deviations[]) {
+        Chunk c = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (c == null || c.rows == CHUNK_ROWS) {
+            if (chunks.size() == maxChunks) {
+                chunks.remove(0);
+                firstRow += CHUNK_ROWS;
+            }
+            c = new Chunk(names.length, INITIAL_CHUNK_ROWS);
+            chunks.add(c);
+        } else if (c.rows == c.servers.length) {
+            c.grow();
+        }
+
+        int i = c.rows;
+        for (int j = 0; j < names.length; j++) {
+            c.values[j][i] = values[j];
+            c.deviations[j][i] = deviations[j];
+        }
+
+        Integer id = serverIndex.get(server);
+        if (id == null) {
+            id = servers.size();
+            servers.add(server);
+            serverIndex.put(server, id);
+        }
+        c.servers[i] = id;
+
+        byte b[] = encode(name);
+        int start = c.nameStart(i);
+        if (start + b.length > c.nameBytes.length) {
+            c.nameBytes = Arrays.copyOf(c.nameBytes, Math.max(
+                    c.nameBytes.length * 2, start + b.length));
+        }
+        System.arraycopy(b, 0, c.nameBytes, start, b.length);
+        c.nameEnds[i] = start + b.length;
+
+        c.rows++;
+        return size++;
+    }
+
+    public String[] getDescriptorNames() {
+        return names.clone();
+    }
+
+    /**
+     * Returns the number of rows appended so far, including dropped ones.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of the oldest row still kept.
+     */
+    public synchronized int getFirstRow() {
+        return firstRow;
+    }
+
+    public synchronized double getValue(int row, int descriptor) {
+        return getChunk(row).values[descriptor][row % CHUNK_ROWS];
+    }
+
+    public synchronized float getDeviation(int row, int descriptor) {
+        return getChunk(row).deviations[descriptor][row % CHUNK_ROWS];
+    }
+
+    public synchronized String getServerName(int row) {
+        return servers.get(getChunk(row).servers[row % CHUNK_ROWS]);
+    }
+
+    public synchronized String getName(int row) {
+        Chunk c = getChunk(row);
+        int i = row % CHUNK_ROWS;
+        int start = c.nameStart(i);
+        return decode(c.nameBytes, start, c.nameEnds[i] - start);
+    }
+
+    private Chunk getChunk(int row) {
+        if (row < firstRow || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + ", rows "
+                    + firstRow + " to " + size + " kept");
+        }
+        return chunks.get((row - firstRow) / CHUNK_ROWS);
+    }
+
+    private static byte[] encode(String s) {
+        try {
+            return String.valueOf(s).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(byte b[], int offset, int length) {
+        try {
+            return new String(b, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
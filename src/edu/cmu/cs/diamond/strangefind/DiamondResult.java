@@ -0,0 +1,93 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.util.Set;
+
+import edu.cmu.cs.diamond.opendiamond.ObjectIdentifier;
+import edu.cmu.cs.diamond.opendiamond.Result;
+import edu.cmu.cs.diamond.opendiamond.Util;
+
+/**
+ * A result from Diamond servers.
+ */
+public class DiamondResult implements SearchResult {
+    final private Result result;
+
+    public DiamondResult(Result r) {
+        result = r;
+    }
+
+    public byte[] getValue(String key) {
+        return result.getValue(key);
+    }
+
+    public Set<String> getKeys() {
+        return result.getKeys();
+    }
+
+    public byte[] getData() {
+        return result.getData();
+    }
+
+    public String getName() {
+        return result.getName();
+    }
+
+    public String getServerName() {
+        return result.getServerName();
+    }
+
+    public String getObjectKey() {
+        // the server and object name, whichever search or run found it
+        String name = result.getName();
+        if (name == null) {
+            byte id[] = result.getValue("_ObjectID");
+            name = id == null ? String.valueOf(result.getObjectIdentifier())
+                    : Util.extractString(id);
+        }
+        return result.getServerName() + "/" + name;
+    }
+
+    public ObjectIdentifier getObjectIdentifier() {
+        return result.getObjectIdentifier();
+    }
+}
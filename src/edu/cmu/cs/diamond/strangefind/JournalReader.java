@@ -0,0 +1,281 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped access to a {@link ResultJournal}, by sequence
+ * number or by object key. Lookups by key use the hash table the journal
+ * writes on close, or, for a journal that was never closed, go through the
+ * key hashes in the index.
+ */
+public class JournalReader {
+    final private File dir;
+
+    final private ByteBuffer index;
+
+    final private int size;
+
+    final private List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    // sequence numbers by object key, null for a journal that was not
+    // closed
+    final private ByteBuffer keys;
+
+    // added after the results, null if none were
+    final private ByteBuffer attributes;
+
+    // sequence number -> offset of its last record in attributes
+    final private Map<Integer, Integer> attributeOffsets = new HashMap<Integer, Integer>();
+
+    public JournalReader(File dir) throws IOException {
+        this.dir = dir;
+
+        index = map(new File(dir, ResultJournal.INDEX));
+        size = index.capacity() / ResultJournal.INDEX_RECORD_SIZE;
+
+        File f = new File(dir, ResultJournal.KEYS);
+        keys = f.isFile() ? map(f) : null;
+
+        f = new File(dir, ResultJournal.ATTRIBUTES);
+        if (f.isFile()) {
+            attributes = map(f);
+            indexAttributes();
+        } else {
+            attributes = null;
+        }
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Returns the searches the results were recorded with, or null for a
+     * journal that does not say.
+     */
+    public List<StrangeFindSearch> getSearches() throws IOException {
+        File f = new File(dir, ResultJournal.SEARCHES);
+        if (!f.isFile()) {
+            return null;
+        }
+        return SearchConfiguration.read(f);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the result with sequence number seq.
+     */
+    public synchronized JournaledResult get(int seq) throws IOException {
+        if (seq < 0 || seq >= size) {
+            throw new IndexOutOfBoundsException("record " + seq + ", size "
+                    + size);
+        }
+
+        ByteBuffer b = getRecord(seq);
+        String key = readUTF(b);
+        String name = b.get() != 0 ? readUTF(b) : null;
+        String server = readUTF(b);
+
+        Map<String, byte[]> attributes = new LinkedHashMap<String, byte[]>();
+        readAttributes(b, attributes);
+        Integer added = attributeOffsets.get(seq);
+        if (added != null) {
+            ByteBuffer a = this.attributes.duplicate();
+            a.position(added);
+            readUTF(a);
+            Map<String, byte[]> m = new LinkedHashMap<String, byte[]>();
+            readAttributes(a, m);
+
+            // what the servers sent wins
+            m.keySet().removeAll(attributes.keySet());
+            attributes.putAll(m);
+        }
+
+        byte data[];
+        int dataLength = b.getInt();
+        if (dataLength == -1) {
+            data = new byte[0];
+        } else {
+            data = new byte[dataLength];
+            b.get(data);
+        }
+
+        return new JournaledResult(key, name, server, attributes, data,
+                dataLength != -1);
+    }
+
+    /**
+     * Returns the first sequence number at or after from holding objectKey,
+     * or -1.
+     */
+    public synchronized int find(String objectKey, int from)
+            throws IOException {
+        long hash = SeenSet.fingerprint(objectKey);
+
+        if (keys == null) {
+            // no key index, look through the hashes in the index
+            for (int seq = Math.max(0, from); seq < size; seq++) {
+                if (isRecordOf(seq, hash, objectKey)) {
+                    return seq;
+                }
+            }
+            return -1;
+        }
+
+        // the records of a key are in one run of slots, in no order
+        int slots = keys.capacity() / 4;
+        int slot = (int) hash & (slots - 1);
+        int found = -1;
+        int seq;
+        while ((seq = keys.getInt(4 * slot) - 1) != -1) {
+            if (seq >= from && (found == -1 || seq < found)
+                    && isRecordOf(seq, hash, objectKey)) {
+                found = seq;
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+        return found;
+    }
+
+    private boolean isRecordOf(int seq, long hash, String objectKey)
+            throws IOException {
+        long h = index.getLong(seq * ResultJournal.INDEX_RECORD_SIZE + 16);
+        return h == hash && readUTF(getRecord(seq)).equals(objectKey);
+    }
+
+    private ByteBuffer getRecord(int seq) throws IOException {
+        int base = seq * ResultJournal.INDEX_RECORD_SIZE;
+        ByteBuffer b = getSegment(index.getInt(base)).duplicate();
+        b.position((int) index.getLong(base + 8));
+        return b;
+    }
+
+    // the attributes are named by object key; the results they belong to
+    // are looked up once, here
+    private void indexAttributes() throws IOException {
+        ByteBuffer b = attributes.duplicate();
+        Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+        try {
+            while (b.hasRemaining()) {
+                int offset = b.position();
+                String key = readUTF(b);
+                int n = b.getInt();
+                for (int i = 0; i < n; i++) {
+                    readUTF(b);
+                    int length = b.getInt();
+                    b.position(b.position() + length);
+                }
+                offsets.put(key, offset);
+            }
+        } catch (RuntimeException e) {
+            // partial last record, from a journal not closed
+        }
+
+        for (Map.Entry<String, Integer> e : offsets.entrySet()) {
+            for (int seq = find(e.getKey(), 0); seq != -1; seq = find(e
+                    .getKey(), seq + 1)) {
+                attributeOffsets.put(seq, e.getValue());
+            }
+        }
+    }
+
+    private static void readAttributes(ByteBuffer b, Map<String, byte[]> m) {
+        int n = b.getInt();
+        for (int i = 0; i < n; i++) {
+            String k = readUTF(b);
+            byte v[] = new byte[b.getInt()];
+            b.get(v);
+            m.put(k, v);
+        }
+    }
+
+    private ByteBuffer getSegment(int n) throws IOException {
+        while (segments.size() <= n) {
+            segments.add(null);
+        }
+        MappedByteBuffer b = segments.get(n);
+        if (b == null) {
+            b = map(ResultJournal.getSegmentFile(dir, n));
+            segments.set(n, b);
+        }
+        return b;
+    }
+
+    private static MappedByteBuffer map(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel c = raf.getChannel();
+            return c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+        } finally {
+            // the mapping stays valid
+            raf.close();
+        }
+    }
+
+    // as written by DataOutput.writeUTF, which is plain UTF-8 for
+    // everything but NUL and supplementary characters
+    private static String readUTF(ByteBuffer b) {
+        int length = b.getShort() & 0xFFFF;
+        byte s[] = new byte[length];
+        b.get(s);
+        try {
+            return new String(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
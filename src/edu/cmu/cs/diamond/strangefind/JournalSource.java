@@ -0,0 +1,141 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Feeds the results of a recorded journal, in order, as if they came from a
+ * search: at a fixed rate, or as fast as they can be read. Session variables
+ * are rebuilt from the statistics carried by the last result given out, so
+ * that they follow the same course as in the recorded search.
+ */
+public class JournalSource implements ResultSource {
+    final private JournalReader reader;
+
+    // results per second, 0 for no limit
+    final private double rate;
+
+    final private String names[];
+
+    private volatile int next;
+
+    private volatile boolean closed;
+
+    private long startTime;
+
+    private volatile SearchResult last;
+
+    public JournalSource(JournalReader reader) {
+        this(reader, 0, new String[0]);
+    }
+
+    public JournalSource(JournalReader reader, double rate,
+            String descriptorNames[]) {
+        this.reader = reader;
+        this.rate = rate;
+        names = descriptorNames.clone();
+    }
+
+    public synchronized SearchResult getNextResult()
+            throws InterruptedException, IOException {
+        if (closed || next >= reader.size()) {
+            return null;
+        }
+
+        if (rate > 0) {
+            if (next == 0) {
+                startTime = System.nanoTime();
+            }
+            long wait = startTime + (long) (next * 1e9 / rate)
+                    - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            }
+        }
+
+        SearchResult r = reader.get(next);
+        last = r;
+        next++;
+        return r;
+    }
+
+    public Map<String, SearchStatistics> getStatistics() {
+        return Collections.singletonMap(reader.getDirectory().getName(),
+                new SearchStatistics(reader.size(), next, 0));
+    }
+
+    public void mergeSessionVariables(Map<String, Double> globalValues) {
+        SearchResult r = last;
+        if (r == null) {
+            return;
+        }
+
+        AnomalyDescriptorView d = AnomalyDescriptorView.get(r, names.length);
+        for (int i = 0; i < names.length; i++) {
+            int count = d.getCount(i);
+            double mean = d.getMean(i);
+            double stddev = d.getStddev(i);
+            if (count <= 0 || Double.isNaN(mean) || Double.isNaN(stddev)) {
+                continue;
+            }
+
+            // inverse of the mean and stddev computed by fil_anomaly
+            globalValues.put(names[i] + "_count", (double) count);
+            globalValues.put(names[i] + "_sum", mean * count);
+            globalValues.put(names[i] + "_sum_of_squares",
+                    (stddev * stddev + mean * mean) * count);
+        }
+    }
+
+    public void clearSessionVariables() {
+    }
+
+    public byte[] getData(SearchResult r) {
+        return r.getData();
+    }
+
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import edu.cmu.cs.diamond.opendiamond.Util;
+
+/**
+ * Where StrangeFind keeps its own files, under ~/.strangefind.
+ */
+public class LocalStorage {
+    private static final File BASE = new File(System.getProperty("user.home"),
+            ".strangefind");
+
+    // written by the scope selection tool, read by CookieMap
+    private static final File DEFAULT_SCOPE = new File(new File(System
+            .getProperty("user.home"), ".diamond"), "NEWSCOPE");
+
+    private LocalStorage() {
+    }
+
+    /**
+     * Returns (and creates) a subdirectory of the StrangeFind directory.
+     */
+    public static File getDirectory(String name) {
+        File dir = new File(BASE, name);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.out.println("cannot create " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Returns a name for the currently defined scope, derived from the
+     * contents of the default scope file, so that it is the same across runs
+     * as long as the scope does not change.
+     */
+    public static String getScopeId() {
+        if (!DEFAULT_SCOPE.isFile()) {
+            return "default";
+        }
+
+        try {
+            InputStream in = new FileInputStream(DEFAULT_SCOPE);
+            try {
+                return digest(Util.readFully(in));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "default";
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of data as a hex string.
+     */
+    public static String digest(byte data[]) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest(data)) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * One JSON object per line and result, so that a reader can take results as
+ * they come:
+ *
+ * <pre>
+ * {"name":"...","server":"...","values":{"circle-count":12.0,...},
+ *  "sigma":{"circle-count":-2.5,...}}
+ * </pre>
+ *
+ * Missing values are null.
+ */
+public class NdjsonExporter extends ResultExporter {
+    final private Writer out;
+
+    final private String quotedNames[];
+
+    public NdjsonExporter(File f, String descriptorNames[])
+            throws IOException {
+        this(new FileOutputStream(f), descriptorNames);
+    }
+
+    public NdjsonExporter(OutputStream os, String descriptorNames[])
+            throws IOException {
+        super(descriptorNames);
+
+        out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 1 << 16);
+
+        quotedNames = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            quotedNames[i] = quote(names[i]);
+        }
+    }
+
+    @Override
+    public synchronized void write(DescriptorStore store, int row)
+            throws IOException {
+        out.write("{\"name\":");
+        out.write(quote(store.getName(row)));
+        out.write(",\"server\":");
+        out.write(quote(store.getServerName(row)));
+        out.write(",\"values\":{");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(quotedNames[i]);
+            out.write(':');
+            writeDouble(store.getValue(row, i));
+        }
+        out.write("},\"sigma\":{");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(quotedNames[i]);
+            out.write(':');
+            writeFloat(store.getDeviation(row, i));
+        }
+        out.write("}}\n");
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void writeDouble(double v) throws IOException {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            out.write("null");
+        } else {
+            out.write(Double.toString(v));
+        }
+    }
+
+    private void writeFloat(float v) throws IOException {
+        if (Float.isNaN(v) || Float.isInfinite(v)) {
+            out.write("null");
+        } else {
+            out.write(Float.toString(v));
+        }
+    }
+
+    private static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters for the client-side result pipeline, with rates measured
+ * since the last reset.
+ */
+public class PipelineMetrics {
+    private static final PipelineMetrics instance = new PipelineMetrics();
+
+    final private ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    private volatile long startTime = System.nanoTime();
+
+    public static PipelineMetrics getInstance() {
+        return instance;
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        AtomicLong c = counters.get(name);
+        if (c == null) {
+            AtomicLong newCounter = new AtomicLong();
+            c = counters.putIfAbsent(name, newCounter);
+            if (c == null) {
+                c = newCounter;
+            }
+        }
+        c.addAndGet(delta);
+    }
+
+    public long get(String name) {
+        AtomicLong c = counters.get(name);
+        return c == null ? 0 : c.get();
+    }
+
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startTime) / 1e9;
+    }
+
+    /**
+     * Returns the average per-second rate of a counter since the last reset.
+     */
+    public double getRate(String name) {
+        double elapsed = getElapsedSeconds();
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return get(name) / elapsed;
+    }
+
+    public void reset() {
+        for (AtomicLong c : counters.values()) {
+            c.set(0);
+        }
+        startTime = System.nanoTime();
+    }
+
+    public String getReport() {
+        SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+            snapshot.put(e.getKey(), e.getValue().get());
+        }
+
+        double elapsed = getElapsedSeconds();
+        DecimalFormat df = new DecimalFormat("0.##");
+        StringBuilder sb = new StringBuilder();
+        sb.append("Elapsed: " + df.format(elapsed) + " s\n");
+        for (Map.Entry<String, Long> e : snapshot.entrySet()) {
+            long v = e.getValue();
+            sb.append(e.getKey() + ": " + v + " (" + df.format(v / elapsed)
+                    + "/s)\n");
+        }
+        return sb.toString();
+    }
+}
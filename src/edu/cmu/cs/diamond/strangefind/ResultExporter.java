@@ -0,0 +1,109 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the name, server and anomaly descriptors of results to a file as
+ * they arrive, reading them from the rows of a DescriptorStore.
+ * Implementations hold at most one chunk of rows in memory.
+ */
+public abstract class ResultExporter {
+    final protected String names[];
+
+    protected ResultExporter(String descriptorNames[]) {
+        names = descriptorNames.clone();
+    }
+
+    /**
+     * Opens an exporter for f, writing CSV if the name ends in ".csv", JSON
+     * lines if it ends in ".ndjson" or ".json", and the columnar format
+     * otherwise.
+     */
+    public static ResultExporter open(File f, String descriptorNames[])
+            throws IOException {
+        String name = f.getName().toLowerCase();
+        if (name.endsWith(".csv")) {
+            return new CsvExporter(f, descriptorNames);
+        } else if (name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return new NdjsonExporter(f, descriptorNames);
+        } else {
+            return new ColumnarExporter(f, descriptorNames);
+        }
+    }
+
+    /**
+     * Opens an exporter writing to out in the named format: csv, ndjson or
+     * columnar.
+     */
+    public static ResultExporter open(OutputStream out, String format,
+            String descriptorNames[]) throws IOException {
+        if (format.equals("csv")) {
+            return new CsvExporter(out, descriptorNames);
+        } else if (format.equals("ndjson")) {
+            return new NdjsonExporter(out, descriptorNames);
+        } else if (format.equals("columnar")) {
+            return new ColumnarExporter(out, descriptorNames);
+        }
+        throw new IllegalArgumentException("unknown format " + format);
+    }
+
+    /**
+     * Writes a row of store, which has the descriptors this exporter was
+     * opened with.
+     */
+    public abstract void write(DescriptorStore store, int row)
+            throws IOException;
+
+    /**
+     * Writes out what the format allows of the rows so far, so a reader of
+     * a stream is not kept waiting.
+     */
+    public abstract void flush() throws IOException;
+
+    /**
+     * Writes out anything buffered and closes the file.
+     */
+    public abstract void close() throws IOException;
+}
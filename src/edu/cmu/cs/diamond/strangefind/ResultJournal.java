@@ -0,0 +1,318 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only record of the results of a search, kept in a directory of
+ * segment files plus a fixed-width index, so that {@link JournalReader} can
+ * page through a past session without any servers.
+ * 
+ * <pre>
+ * segment-NNNNN: records of
+ *     UTF object key, boolean has name, [UTF name], UTF server,
+ *     int n, n x (UTF key, int length, bytes),
+ *     int length, bytes (object body, -1 if not recorded)
+ * index: per record, in sequence order,
+ *     int segment, int length, long offset, long object key hash
+ * keys: written on close, a hash table of the index by object key:
+ *     a power of two of int slots, each 0 or a sequence number + 1,
+ *     a record being at or after slot (key hash &amp; (slots - 1)), probing
+ *     one slot further at a time
+ * attributes: records of attributes made on the client after the result
+ *     was appended, such as thumbnails, later ones winning:
+ *     UTF object key, int n, n x (UTF key, int length, bytes)
+ * searches: the searches that found the results, as written by
+ *     SearchConfiguration, so that they are shown the same way offline
+ * </pre>
+ */
+public class ResultJournal {
+    static final String INDEX = "index";
+
+    static final String ATTRIBUTES = "attributes";
+
+    static final String KEYS = "keys";
+
+    static final String SEARCHES = "searches";
+
+    static final int INDEX_RECORD_SIZE = 24;
+
+    static final long SEGMENT_SIZE = 256L << 20;
+
+    // records between flushes of segment and index
+    private static final int FLUSH_INTERVAL = 256;
+
+    final private File dir;
+
+    final private boolean includeData;
+
+    final private DataOutputStream index;
+
+    final private ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+    private OutputStream segment;
+
+    private int segmentNumber = -1;
+
+    private long segmentOffset;
+
+    private int unflushed;
+
+    // opened by the first appendAttributes
+    private DataOutputStream attributes;
+
+    private boolean closed;
+
+    public ResultJournal(File dir, boolean includeData) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+
+        this.dir = dir;
+        this.includeData = includeData;
+        index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(dir, INDEX))));
+    }
+
+    /**
+     * Creates a journal in a new, time-stamped directory under the
+     * StrangeFind journal directory.
+     */
+    public static ResultJournal create(boolean includeData)
+            throws IOException {
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss")
+                .format(new Date());
+        File dir = LocalStorage.getDirectory("journal");
+
+        // searches started in the same second
+        File f = new File(dir, name);
+        for (int i = 2; f.exists(); i++) {
+            f = new File(dir, name + "-" + i);
+        }
+        return new ResultJournal(f, includeData);
+    }
+
+    public boolean isIncludingData() {
+        return includeData;
+    }
+
+    /**
+     * Records the configuration of the searches, as returned by
+     * SearchConfiguration.toString.
+     */
+    public void writeSearches(String configuration) throws IOException {
+        Writer w = new OutputStreamWriter(new FileOutputStream(new File(dir,
+                SEARCHES)), "ISO-8859-1");
+        try {
+            w.write(configuration);
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Appends a result. data is the object body, or null to leave it out.
+     */
+    public synchronized void append(SearchResult r, byte data[])
+            throws IOException {
+        record.reset();
+        DataOutputStream out = new DataOutputStream(record);
+
+        out.writeUTF(r.getObjectKey());
+        String name = r.getName();
+        out.writeBoolean(name != null);
+        if (name != null) {
+            out.writeUTF(name);
+        }
+        out.writeUTF(String.valueOf(r.getServerName()));
+
+        Set<String> keys = r.getKeys();
+        out.writeInt(keys.size());
+        for (String k : keys) {
+            byte v[] = r.getValue(k);
+            out.writeUTF(k);
+            out.writeInt(v.length);
+            out.write(v);
+        }
+
+        if (data == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        out.flush();
+
+        int length = record.size();
+        if (segment == null || segmentOffset + length > SEGMENT_SIZE) {
+            nextSegment();
+        }
+        record.writeTo(segment);
+
+        index.writeInt(segmentNumber);
+        index.writeInt(length);
+        index.writeLong(segmentOffset);
+        index.writeLong(SeenSet.fingerprint(r.getObjectKey()));
+
+        segmentOffset += length;
+
+        if (++unflushed == FLUSH_INTERVAL) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds attributes to the result with the given object key, for those
+     * only made once it was shown. They are dropped once the journal is
+     * closed.
+     */
+    public synchronized void appendAttributes(String objectKey,
+            Map<String, byte[]> values) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (attributes == null) {
+            attributes = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(new File(dir, ATTRIBUTES))));
+        }
+
+        attributes.writeUTF(objectKey);
+        attributes.writeInt(values.size());
+        for (Map.Entry<String, byte[]> e : values.entrySet()) {
+            attributes.writeUTF(e.getKey());
+            attributes.writeInt(e.getValue().length);
+            attributes.write(e.getValue());
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        // data first, so the index never points past it
+        if (segment != null) {
+            segment.flush();
+        }
+        index.flush();
+        if (attributes != null) {
+            attributes.flush();
+        }
+        unflushed = 0;
+    }
+
+    public synchronized void close() throws IOException {
+        flush();
+        closed = true;
+        if (segment != null) {
+            segment.close();
+        }
+        index.close();
+        if (attributes != null) {
+            attributes.close();
+        }
+        writeKeys();
+    }
+
+    // built in place in the mapped file, so it takes no heap however long
+    // the journal
+    private void writeKeys() throws IOException {
+        RandomAccessFile indexFile = new RandomAccessFile(new File(dir, INDEX),
+                "r");
+        RandomAccessFile keysFile = new RandomAccessFile(new File(dir, KEYS),
+                "rw");
+        try {
+            FileChannel ic = indexFile.getChannel();
+            ByteBuffer in = ic.map(FileChannel.MapMode.READ_ONLY, 0, ic
+                    .size());
+            int size = (int) (ic.size() / INDEX_RECORD_SIZE);
+
+            int slots = 16;
+            while (slots < 2 * size) {
+                slots *= 2;
+            }
+            keysFile.setLength(0);
+            keysFile.setLength(4L * slots);
+            MappedByteBuffer out = keysFile.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, 4L * slots);
+
+            for (int seq = 0; seq < size; seq++) {
+                long hash = in.getLong(seq * INDEX_RECORD_SIZE + 16);
+                int slot = (int) hash & (slots - 1);
+                while (out.getInt(4 * slot) != 0) {
+                    slot = (slot + 1) & (slots - 1);
+                }
+                out.putInt(4 * slot, seq + 1);
+            }
+            out.force();
+        } finally {
+            indexFile.close();
+            keysFile.close();
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+        segmentNumber++;
+        segmentOffset = 0;
+        segment = new BufferedOutputStream(new FileOutputStream(
+                getSegmentFile(dir, segmentNumber)), 1 << 16);
+    }
+
+    static File getSegmentFile(File dir, int n) {
+        return new File(dir, String.format("segment-%05d", n));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A running search, as used by the result display.
+ */
+public interface ResultSource {
+    /**
+     * Blocks for the next result. Returns null when there are no more.
+     */
+    SearchResult getNextResult() throws InterruptedException, IOException;
+
+    /**
+     * Returns object counts by server name.
+     */
+    Map<String, SearchStatistics> getStatistics() throws IOException,
+            InterruptedException;
+
+    void mergeSessionVariables(Map<String, Double> globalValues)
+            throws IOException, InterruptedException;
+
+    void clearSessionVariables() throws IOException, InterruptedException;
+
+    /**
+     * Returns the object body of r, fetching it if the result did not carry
+     * it.
+     */
+    byte[] getData(SearchResult r) throws IOException;
+
+    void close() throws InterruptedException;
+}
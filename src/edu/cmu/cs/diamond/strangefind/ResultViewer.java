@@ -47,11 +47,14 @@ import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.awt.image.RescaleOp;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.imageio.ImageIO;
 import javax.swing.Icon;
@@ -60,9 +63,6 @@ import javax.swing.JButton;
 
 import org.jdesktop.swingx.graphics.GraphicsUtilities;
 
-import edu.cmu.cs.diamond.opendiamond.Result;
-import edu.cmu.cs.diamond.opendiamond.Search;
-import edu.cmu.cs.diamond.opendiamond.SearchFactory;
 import edu.cmu.cs.diamond.opendiamond.Util;
 
 public class ResultViewer extends JButton implements ActionListener {
@@ -76,13 +76,40 @@ public class ResultViewer extends JButton implements ActionListener {
 
     private static final int PREFERRED_WIDTH = 200;
 
+    private static final int THUMBNAIL_POOL_SIZE = 32;
+
+    private static final ThumbnailScaler scaler = new ThumbnailScaler(
+            PREFERRED_WIDTH, PREFERRED_HEIGHT, THUMBNAIL_POOL_SIZE);
+
+    private static final BufferedImage PLACEHOLDER = new BufferedImage(
+            PREFERRED_WIDTH, PREFERRED_HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+    private static final int THUMBNAIL_CACHE_SIZE = 64;
+
+    // thumbnails that had to be decoded from the object itself
+    private static final Map<String, ImageAndScale> thumbnailCache = Collections
+            .synchronizedMap(new LinkedHashMap<String, ImageAndScale>(16,
+                    0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, ImageAndScale> eldest) {
+                    return size() > THUMBNAIL_CACHE_SIZE;
+                }
+            });
+
     private volatile AnnotatedResult result;
 
-    private volatile Search search;
+    private volatile ResultSource source;
+
+    // made by setResult, shown by commitResult; guarded by this
+    private Icon thumbnail;
 
-    private volatile SearchFactory factory;
+    // pooled, owned by scaler; set by setResult until commitResult shows it,
+    // guarded by this
+    private BufferedImage thumbnailImage;
 
-    private volatile Icon thumbnail;
+    // pooled, on display; only used on the AWT thread
+    private BufferedImage shownImage;
 
     public ResultViewer() {
         super();
@@ -100,13 +127,16 @@ public class ResultViewer extends JButton implements ActionListener {
         addActionListener(this);
     }
 
-    public void setResult(AnnotatedResult r, Search s, SearchFactory f) {
+    /**
+     * Prepares r for display, off the AWT thread if wanted. It is shown by
+     * commitResult.
+     */
+    public void setResult(AnnotatedResult r, ResultSource s) {
         result = r;
-        search = s;
-        factory = f;
+        source = s;
 
         if (result == null) {
-            thumbnail = null;
+            setThumbnail(null, null);
             return;
         }
 
@@ -114,8 +144,7 @@ public class ResultViewer extends JButton implements ActionListener {
         BufferedImage img = ias.img;
 
         if (img == null) {
-            img = new BufferedImage(getPreferredWidth(), getPreferredHeight(),
-                    BufferedImage.TYPE_INT_RGB);
+            img = PLACEHOLDER;
         }
 
         Insets in = getInsets();
@@ -134,13 +163,27 @@ public class ResultViewer extends JButton implements ActionListener {
                 - in.bottom - labelHeight));
         BufferedImage newImg;
 
-        newImg = Util.scaleImage(img, scale);
+        newImg = scaler.scale(img, scale);
 
         Graphics2D g = newImg.createGraphics();
         result.decorate(g, scale * ias.scale);
         g.dispose();
 
-        thumbnail = new ImageIcon(newImg);
+        setThumbnail(new ImageIcon(newImg), newImg);
+    }
+
+    private void setThumbnail(Icon icon, BufferedImage img) {
+        BufferedImage unshown;
+        synchronized (this) {
+            unshown = thumbnailImage;
+            thumbnail = icon;
+            thumbnailImage = img;
+        }
+
+        // never displayed, so nothing can be painting it
+        if (unshown != null) {
+            scaler.release(unshown);
+        }
     }
 
     private ImageAndScale getImageForThumbnail() {
@@ -164,16 +207,94 @@ public class ResultViewer extends JButton implements ActionListener {
             return ias;
         }
 
-        // next, fallback
-        BufferedImage imgs[] = getImgs();
-        if (imgs.length > 0) {
-            ias.img = imgs[0];
+        // next, fallback: decode only as much as the thumbnail needs
+        String id = result.getResult().getObjectKey();
+        ImageAndScale cached = thumbnailCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        SubsampledReader.Decoded d = null;
+
+        // if the images are on the image server, the object is not an image
+        // and need not be fetched
+        boolean hasImageHost = result.getValue("image-1") != null;
+        if (!hasImageHost) {
+            try {
+                d = SubsampledReader.read(new ByteArrayInputStream(
+                        getObjectData()), getPreferredWidth(),
+                        getPreferredHeight());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (d == null) {
+            try {
+                d = result.getThumbnailByHTTP(getPreferredWidth(),
+                        getPreferredHeight());
+            } catch (NullPointerException e) {
+                // guess we don't have this either
+            }
+        }
+
+        if (d != null) {
+            ias.img = GraphicsUtilities.toCompatibleImage(possiblyNormalize(
+                    d.img, id + "/thumbnail"));
+            ias.scale = d.scale;
+            thumbnailCache.put(id, ias);
         }
 
         return ias;
     }
 
+    /**
+     * Returns the thumbnail made on the client for the object with the given
+     * key, as the attributes a result carries a thumbnail from the servers
+     * in: thumbnail.jpeg and _cols.int. Returns null unless setResult made
+     * one recently.
+     */
+    public static Map<String, byte[]> getClientThumbnailAttributes(
+            String objectKey) throws IOException {
+        ImageAndScale ias = thumbnailCache.get(objectKey);
+        if (ias == null || ias.img == null) {
+            return null;
+        }
+
+        // JPEG has no alpha
+        BufferedImage rgb = new BufferedImage(ias.img.getWidth(), ias.img
+                .getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.drawImage(ias.img, 0, 0, null);
+        g.dispose();
+
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(rgb, "jpeg", jpeg);
+        int cols = (int) Math.round(ias.img.getWidth() / ias.scale);
+
+        Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        result.put("thumbnail.jpeg", jpeg.toByteArray());
+        result.put("_cols.int", ByteBuffer.allocate(4).order(
+                ByteOrder.LITTLE_ENDIAN).putInt(cols).array());
+        return result;
+    }
+
+    private byte[] getObjectData() throws IOException {
+        return source.getData(result.getResult());
+    }
+
+    /**
+     * Shows what setResult prepared. Must be called on the AWT thread.
+     */
     public void commitResult() {
+        Icon icon;
+        BufferedImage img;
+        synchronized (this) {
+            icon = thumbnail;
+            img = thumbnailImage;
+            thumbnailImage = null;
+        }
+
         if (result == null) {
             setToolTipText(null);
             setText(null);
@@ -182,32 +303,32 @@ public class ResultViewer extends JButton implements ActionListener {
         } else {
             setToolTipText(result.getTooltipAnnotation());
             setText(result.getOneLineAnnotation());
-            setIcon(thumbnail);
+            setIcon(icon);
             setEnabled(true);
         }
+
+        // the old buffer is no longer painted once the new icon is in
+        if (img != null || icon == null) {
+            if (shownImage != null) {
+                scaler.release(shownImage);
+            }
+            shownImage = img;
+        }
     }
 
-    private BufferedImage[] getImgs() {
+    private BufferedImage[] getImgs(byte data[]) {
         // XXX this is messy and needs to be modularized
         BufferedImage img = null;
+        String id = result.getResult().getObjectKey();
 
         // first try data (with ImageIO)
-        Result diamondResult = result.getResult();
         try {
-            byte data[] = diamondResult.getData();
-            if (data.length == 0) {
-                // refetch
-                diamondResult = factory.generateResult(diamondResult
-                        .getObjectIdentifier(), new HashSet<String>(Arrays
-                        .asList(new String[] { "" })));
-            }
-            img = ImageIO
-                    .read(new ByteArrayInputStream(diamondResult.getData()));
+            img = ImageIO.read(new ByteArrayInputStream(data));
         } catch (IOException e) {
             e.printStackTrace();
         }
         if (img != null) {
-            possiblyNormalize(img);
+            img = possiblyNormalize(img, id + "/0");
             return new BufferedImage[] { GraphicsUtilities
                     .toCompatibleImage(img) };
         }
@@ -221,7 +342,8 @@ public class ResultViewer extends JButton implements ActionListener {
                 BufferedImage result[] = new BufferedImage[serverImgs.length];
                 for (int i = 0; i < serverImgs.length; i++) {
                     result[i] = GraphicsUtilities
-                            .toCompatibleImage(serverImgs[i]);
+                            .toCompatibleImage(possiblyNormalize(
+                                    serverImgs[i], id + "/" + i));
                 }
                 return result;
             }
@@ -233,23 +355,31 @@ public class ResultViewer extends JButton implements ActionListener {
         return new BufferedImage[0];
     }
 
-    private void possiblyNormalize(BufferedImage img) {
-        if (img.getType() == BufferedImage.TYPE_USHORT_GRAY) {
-            // XXX better test above (sample models?)
-            normalize(img);
+    // key names the object and channel img was decoded from
+    private BufferedImage possiblyNormalize(BufferedImage img, String key) {
+        if (AutoContrast.canApply(img)) {
+            return normalize(img, key);
         }
+        return img;
     }
 
-    private void normalize(BufferedImage img) {
-        System.out.println("Normalising");
-
-        // XXX: hah
-        RescaleOp r = new RescaleOp(32, 0, null);
-        r.filter(img, img);
+    private BufferedImage normalize(BufferedImage img, String key) {
+        // window/level from the cached histogram, straight to 8 bits
+        return AutoContrast.apply(img, key);
     }
 
     public void actionPerformed(ActionEvent e) {
-        new VerySimpleImageViewer(result, getImgs()).setVisible(true);
+        // fetched once, for both the images and the verbose text
+        byte data[];
+        try {
+            data = getObjectData();
+        } catch (IOException e1) {
+            e1.printStackTrace();
+            data = new byte[0];
+        }
+
+        new VerySimpleImageViewer(result, getImgs(data), result
+                .getVerboseAnnotation(data)).setVisible(true);
     }
 
     public static int getPreferredWidth() {
@@ -0,0 +1,270 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import edu.cmu.cs.diamond.strangefind.search.CircleAnomalyFilter;
+import edu.cmu.cs.diamond.strangefind.search.NeuriteAnomalyFilter;
+import edu.cmu.cs.diamond.strangefind.search.NeuriteMultiplaneAnomalyFilter;
+import edu.cmu.cs.diamond.strangefind.search.OOMuscleAnomalyFilter;
+import edu.cmu.cs.diamond.strangefind.search.XQueryAnomalyFilter;
+
+/**
+ * A set of searches to run together, kept as a properties file. The
+ * searches are numbered from 1, and the settings of search n are the keys
+ * starting with "search.n.":
+ *
+ * <pre>
+ * search.1.type = circle
+ * search.1.priming = 5
+ * search.1.select.circle-count = true
+ * search.1.sigma.circle-count = 2.5
+ * search.2.type = xquery
+ * search.2.query.1 = Cell area:{//Cell/Area}
+ * search.2.query.2 = Nuclei:{//Nuclei/Count}
+ * search.2.expression = OR($1,$2)
+ * </pre>
+ *
+ * The types are circle, neurite, neurite-multiplane, oomuscle and xquery.
+ * Each search reads and writes its other keys itself; all have priming,
+ * select.&lt;descriptor&gt; and sigma.&lt;descriptor&gt;. An xquery search
+ * takes its queries, in the syntax of an attribute map file, as query.1,
+ * query.2 and so on, or from the file named by attrmap, and its logic as
+ * or, and, not or custom, with an expression for custom.
+ */
+public class SearchConfiguration {
+    private SearchConfiguration() {
+    }
+
+    public static List<StrangeFindSearch> read(File f) throws IOException {
+        Properties p = new Properties();
+        InputStream in = new FileInputStream(f);
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+        return read(p);
+    }
+
+    public static List<StrangeFindSearch> read(Properties p) {
+        List<StrangeFindSearch> searches = new ArrayList<StrangeFindSearch>();
+        for (int i = 1;; i++) {
+            Properties settings = getSettings(p, "search." + i + ".");
+            if (settings.isEmpty()) {
+                break;
+            }
+            searches.add(createSearch(settings));
+        }
+        if (searches.isEmpty()) {
+            throw new IllegalArgumentException("no search.1.type given");
+        }
+        return searches;
+    }
+
+    static StrangeFindSearch createSearch(Properties settings) {
+        String type = settings.getProperty("type");
+        settings.remove("type");
+        if (type == null) {
+            throw new IllegalArgumentException("search without a type");
+        }
+        type = type.trim();
+
+        StrangeFindSearch s;
+        if (type.equals("circle")) {
+            s = new CircleAnomalyFilter();
+        } else if (type.equals("neurite")) {
+            s = new NeuriteAnomalyFilter();
+        } else if (type.equals("neurite-multiplane")) {
+            s = new NeuriteMultiplaneAnomalyFilter();
+        } else if (type.equals("oomuscle")) {
+            s = new OOMuscleAnomalyFilter();
+        } else if (type.equals("xquery")) {
+            s = createXQuerySearch(settings);
+        } else {
+            throw new IllegalArgumentException("unknown search type " + type);
+        }
+
+        s.setConfiguration(settings);
+        return s;
+    }
+
+    // queries given as query.1, query.2, ... or in an attribute map file
+    private static StrangeFindSearch createXQuerySearch(Properties settings) {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        for (int i = 1;; i++) {
+            String q = settings.getProperty("query." + i);
+            if (q == null) {
+                break;
+            }
+            settings.remove("query." + i);
+            String tokens[] = q.split(":", 2);
+            if (tokens.length != 2) {
+                throw new IllegalArgumentException("bad value for query."
+                        + i + ": " + q);
+            }
+            queries.put(tokens[0].replaceAll("\\t", " "), tokens[1]);
+        }
+
+        String attrmap = settings.getProperty("attrmap");
+        settings.remove("attrmap");
+        if (!queries.isEmpty()) {
+            return new XQueryAnomalyFilter(queries);
+        }
+        if (attrmap == null) {
+            throw new IllegalArgumentException(
+                    "xquery search without queries or an attrmap");
+        }
+        File f = new File(attrmap.trim());
+        if (!f.isFile()) {
+            throw new IllegalArgumentException("no attribute map " + f);
+        }
+        return new XQueryAnomalyFilter(f);
+    }
+
+    /**
+     * Writes the configuration of searches to f, in the form returned by
+     * toString.
+     */
+    public static void write(File f, List<StrangeFindSearch> searches)
+            throws IOException {
+        Writer w = new OutputStreamWriter(new FileOutputStream(f),
+                "ISO-8859-1");
+        try {
+            w.write("# StrangeFind searches\n");
+            w.write(toString(searches));
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Returns the configuration of searches as properties file text, one
+     * key per line in sorted order and without the date Properties.store
+     * puts in, so that the same searches always give the same text.
+     */
+    public static String toString(List<StrangeFindSearch> searches) {
+        Properties p = new Properties();
+        for (int i = 0; i < searches.size(); i++) {
+            StrangeFindSearch s = searches.get(i);
+            String prefix = "search." + (i + 1) + ".";
+            p.setProperty(prefix + "type", getType(s));
+            Properties settings = s.getConfiguration();
+            for (String key : settings.stringPropertyNames()) {
+                p.setProperty(prefix + key, settings.getProperty(key));
+            }
+        }
+
+        // store escapes anything that would break a line or the encoding
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            p.store(out, null);
+        } catch (IOException e) {
+            // not from memory
+            throw new RuntimeException(e);
+        }
+        List<String> lines = new ArrayList<String>();
+        for (String line : new String(out.toByteArray(),
+                Charset.forName("ISO-8859-1")).split("\\r?\\n")) {
+            if (line.length() > 0 && !line.startsWith("#")) {
+                lines.add(line);
+            }
+        }
+        Collections.sort(lines);
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a name for the configuration of searches, the same whenever
+     * their settings are.
+     */
+    public static String getDigest(List<StrangeFindSearch> searches) {
+        return LocalStorage.digest(toString(searches).getBytes(
+                Charset.forName("ISO-8859-1")));
+    }
+
+    static String getType(StrangeFindSearch s) {
+        if (s instanceof CircleAnomalyFilter) {
+            return "circle";
+        } else if (s instanceof NeuriteAnomalyFilter) {
+            return "neurite";
+        } else if (s instanceof NeuriteMultiplaneAnomalyFilter) {
+            return "neurite-multiplane";
+        } else if (s instanceof OOMuscleAnomalyFilter) {
+            return "oomuscle";
+        } else if (s instanceof XQueryAnomalyFilter) {
+            return "xquery";
+        }
+        throw new IllegalArgumentException("no type for "
+                + s.getClass().getName());
+    }
+
+    private static Properties getSettings(Properties p, String prefix) {
+        Properties result = new Properties();
+        for (String key : p.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                result.setProperty(key.substring(prefix.length()), p
+                        .getProperty(key));
+            }
+        }
+        return result;
+    }
+}
@@ -53,6 +53,8 @@ import javax.swing.Box;
 import javax.swing.JPanel;
 
 import edu.cmu.cs.diamond.opendiamond.Filter;
+import edu.cmu.cs.diamond.strangefind.search.AnomalyStage;
+import edu.cmu.cs.diamond.strangefind.search.FilterGraph;
 
 public class SearchList extends JPanel {
     final private List<StrangeFindSearch> searches = new ArrayList<StrangeFindSearch>();
@@ -81,15 +83,42 @@ public class SearchList extends JPanel {
         validate();
     }
 
+    public void clearSearches() {
+        searches.clear();
+        box.removeAll();
+
+        validate();
+        repaint();
+    }
+
+    public List<StrangeFindSearch> getSearches() {
+        return new ArrayList<StrangeFindSearch>(searches);
+    }
+
     public List<Filter> getFilters() {
-        List<Filter> f = new ArrayList<Filter>();
+        return getFilterGraph().createFilters();
+    }
+
+    public FilterGraph getFilterGraph() {
+        return createFilterGraph(searches);
+    }
+
+    public static FilterGraph createFilterGraph(
+            List<StrangeFindSearch> searches) {
+        // shared stages are run once, and the anomaly stages combined
+        FilterGraph g = new FilterGraph();
         for (StrangeFindSearch s : searches) {
-            f.addAll(Arrays.asList(s.getFilters()));
+            g.add(s.getFilters(), s.getAnomalyStage());
         }
-        return f;
+        return g;
     }
 
     public Annotator[] getAnnotators() {
+        return getAnnotators(searches);
+    }
+
+    public static Annotator[] getAnnotators(List<StrangeFindSearch> searches) {
+        combineAnomalyStages(searches);
         List<Annotator> l = new ArrayList<Annotator>();
         for (StrangeFindSearch s : searches) {
             l.addAll(Arrays.asList(s.getAnnotator()));
@@ -98,6 +127,11 @@ public class SearchList extends JPanel {
     }
 
     public Decorator[] getDecorators() {
+        return getDecorators(searches);
+    }
+
+    public static Decorator[] getDecorators(List<StrangeFindSearch> searches) {
+        combineAnomalyStages(searches);
         List<Decorator> l = new ArrayList<Decorator>();
         for (StrangeFindSearch s : searches) {
             l.addAll(Arrays.asList(s.getDecorator()));
@@ -105,19 +139,59 @@ public class SearchList extends JPanel {
         return l.toArray(new Decorator[0]);
     }
 
+    public String[] getDescriptorNames() {
+        return getDescriptorNames(searches);
+    }
+
+    public static String[] getDescriptorNames(
+            List<StrangeFindSearch> searches) {
+        // as numbered by the combined anomaly stage, first search first
+        if (searches.isEmpty()) {
+            return new String[0];
+        }
+        return combineAnomalyStages(searches).getDescriptorNames();
+    }
+
+    /**
+     * Combines the anomaly stages of searches and tells each search where
+     * its descriptors are in the combined stage.
+     */
+    private static AnomalyStage combineAnomalyStages(
+            List<StrangeFindSearch> searches) {
+        List<AnomalyStage> stages = new ArrayList<AnomalyStage>();
+        for (StrangeFindSearch s : searches) {
+            stages.add(s.getAnomalyStage());
+        }
+        if (stages.isEmpty()) {
+            return null;
+        }
+
+        AnomalyStage combined = AnomalyStage.combine(stages);
+        for (StrangeFindSearch s : searches) {
+            s.setDescriptorIndices(combined.getIndices(s
+                    .getDescriptorNames()));
+        }
+        return combined;
+    }
+
     public Set<String> getPushAttributes() {
-        boolean anyPushAttributes = false;
+        return getPushAttributes(searches);
+    }
 
+    public static Set<String> getPushAttributes(
+            List<StrangeFindSearch> searches) {
+        combineAnomalyStages(searches);
         Set<String> set = new HashSet<String>();
         for (StrangeFindSearch s : searches) {
             Set<String> z = s.getPushAttributes();
-            if (z != null) {
-                anyPushAttributes = true;
-                set.addAll(s.getPushAttributes());
+            if (z == null || z.contains(null)) {
+                // this search needs everything
+                return null;
             }
+            set.addAll(z);
         }
 
-        if (set.contains(null) || !anyPushAttributes) {
+        if (set.isEmpty()) {
             return null;
         } else {
             return set;
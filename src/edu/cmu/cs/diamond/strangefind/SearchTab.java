@@ -0,0 +1,187 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.swing.table.AbstractTableModel;
+
+import edu.cmu.cs.diamond.opendiamond.SearchClosedException;
+
+/**
+ * One search and the pane showing its results, with its own statistics and
+ * session variables. Several can run at once; they share the result
+ * preparation pool of ThumbnailBox and the thumbnail cache of ResultViewer.
+ */
+public class SearchTab {
+    final private int number;
+
+    final private Map<String, Double> sessionVariables = new TreeMap<String, Double>();
+
+    final private AbstractTableModel sessionVariablesTableModel = new AbstractTableModel() {
+        public int getColumnCount() {
+            return 2;
+        }
+
+        public int getRowCount() {
+            return sessionVariables.size();
+        }
+
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            // inefficient?
+            switch (columnIndex) {
+            case 0:
+                return sessionVariables.keySet().toArray()[rowIndex];
+            case 1:
+                return sessionVariables.values().toArray()[rowIndex];
+            default:
+                return null;
+            }
+        }
+    };
+
+    final private ThumbnailBox results;
+
+    private volatile ResultSource search;
+
+    private File exportFile;
+
+    // from start until the pane has finished with the search, on the AWT
+    // thread
+    private boolean running;
+
+    public SearchTab(int number) {
+        this.number = number;
+
+        // the buttons follow whichever tab is shown
+        results = new ThumbnailBox(sessionVariables,
+                sessionVariablesTableModel, null, null);
+        results.addPropertyChangeListener(ThumbnailBox.SEARCH_FINISHED,
+                new PropertyChangeListener() {
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        running = false;
+                    }
+                });
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getTitle() {
+        return "Search " + number;
+    }
+
+    public ThumbnailBox getResults() {
+        return results;
+    }
+
+    public ResultSource getSearch() {
+        return search;
+    }
+
+    public Map<String, Double> getSessionVariables() {
+        return sessionVariables;
+    }
+
+    public AbstractTableModel getSessionVariablesTableModel() {
+        return sessionVariablesTableModel;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Sets the file the next search of this tab exports to, or null.
+     */
+    public void setExportFile(File f) {
+        exportFile = f;
+        results.setExportFile(f);
+    }
+
+    public File getExportFile() {
+        return exportFile;
+    }
+
+    public void start(ResultSource s) {
+        search = s;
+        running = true;
+        results.start(s);
+    }
+
+    public void browse(JournalReader j) {
+        search = null;
+        results.browse(j);
+    }
+
+    public void stop() throws InterruptedException {
+        if (running) {
+            results.stop();
+        }
+    }
+
+    public void clearSessionVariables() throws IOException,
+            InterruptedException {
+        // clear locally
+        sessionVariables.clear();
+
+        // clear on server
+        ResultSource s = search;
+        if (s != null) {
+            try {
+                s.clearSessionVariables();
+            } catch (SearchClosedException e) {
+                // ignore
+            }
+        }
+        sessionVariablesTableModel.fireTableDataChanged();
+    }
+
+    public void dispose() {
+        results.dispose();
+    }
+}
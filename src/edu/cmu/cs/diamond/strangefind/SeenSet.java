@@ -0,0 +1,297 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of object keys already evaluated. Lookups go through a Bloom filter
+ * first; possible hits are confirmed against an exact table of 64-bit
+ * fingerprints, so a Bloom false positive never drops a new object. When
+ * backed by a file, every new fingerprint is appended to it and the set is
+ * reloaded on the next run. Searches that open the same file share one set
+ * until the last of them closes it.
+ */
+public class SeenSet {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private static final int MIN_EXPECTED = 1 << 20;
+
+    // sets backed by a file, by canonical file
+    private static final Map<File, SeenSet> opened = new HashMap<File, SeenSet>();
+
+    final private long bloom[];
+
+    final private long bloomBits;
+
+    final private int hashes;
+
+    // open addressing, 0 means empty
+    private long table[] = new long[1024];
+
+    private int size;
+
+    final private File file;
+
+    private DataOutputStream log;
+
+    // searches that have opened this set and not closed it, guarded by
+    // opened
+    private int users;
+
+    public SeenSet(int expected) {
+        this(expected, null, null);
+    }
+
+    private SeenSet(int expected, File file, DataOutputStream log) {
+        this.file = file;
+        this.log = log;
+
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-expected * Math.log(FALSE_POSITIVE_RATE)
+                / (ln2 * ln2));
+        bloom = new long[(int) ((m + 63) / 64)];
+        bloomBits = bloom.length * 64L;
+        hashes = Math.max(1, Math.min(16, (int) Math.round((double) bloomBits
+                / expected * ln2)));
+    }
+
+    /**
+     * Loads the fingerprints stored in f, if any, and appends new ones to
+     * it. If f is already open, returns the same set. Each open must be
+     * matched by a close.
+     */
+    public static SeenSet open(File f) throws IOException {
+        f = f.getCanonicalFile();
+        synchronized (opened) {
+            SeenSet s = opened.get(f);
+            if (s == null) {
+                s = load(f);
+                opened.put(f, s);
+            }
+            s.users++;
+            return s;
+        }
+    }
+
+    private static SeenSet load(File f) throws IOException {
+        int stored = (int) (f.length() / 8);
+
+        DataOutputStream log = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(f, true)));
+        SeenSet s = new SeenSet(Math.max(MIN_EXPECTED, 2 * stored), f, log);
+
+        if (stored > 0) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(f)));
+            try {
+                for (int i = 0; i < stored; i++) {
+                    s.insert(in.readLong());
+                }
+            } catch (EOFException e) {
+                // partial last record
+            } finally {
+                in.close();
+            }
+        }
+
+        return s;
+    }
+
+    /**
+     * Adds key. Returns true if it was not in the set before. If the file
+     * cannot be written, the key is still added and the set carries on
+     * without its file.
+     */
+    public synchronized boolean add(String key) {
+        long fp = fingerprint(key);
+        if (containsFingerprint(fp)) {
+            return false;
+        }
+
+        insert(fp);
+        if (log != null) {
+            try {
+                log.writeLong(fp);
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeLog();
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean contains(String key) {
+        return containsFingerprint(fingerprint(key));
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void flush() {
+        if (log != null) {
+            try {
+                log.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeLog();
+            }
+        }
+    }
+
+    /**
+     * Closes the file once every search that opened it has.
+     */
+    public void close() throws IOException {
+        if (file != null) {
+            synchronized (opened) {
+                if (--users > 0) {
+                    return;
+                }
+                opened.remove(file);
+            }
+        }
+
+        synchronized (this) {
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        }
+    }
+
+    private void closeLog() {
+        try {
+            log.close();
+        } catch (IOException e) {
+            // already failing
+        }
+        log = null;
+    }
+
+    private boolean containsFingerprint(long fp) {
+        // cheap negative first
+        long h2 = mix(fp ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((fp + i * h2) & Long.MAX_VALUE) % bloomBits;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        // then exact
+        int mask = table.length - 1;
+        for (int i = (int) fp & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (table[i] == fp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insert(long fp) {
+        long h2 = mix(fp ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((fp + i * h2) & Long.MAX_VALUE) % bloomBits;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+
+        if (2 * (size + 1) > table.length) {
+            long old[] = table;
+            table = new long[old.length * 2];
+            for (long v : old) {
+                if (v != 0) {
+                    put(v);
+                }
+            }
+        }
+        if (put(fp)) {
+            size++;
+        }
+    }
+
+    private boolean put(long fp) {
+        int mask = table.length - 1;
+        int i = (int) fp & mask;
+        while (table[i] != 0) {
+            if (table[i] == fp) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = fp;
+        return true;
+    }
+
+    /**
+     * Returns a non-zero 64-bit hash of key.
+     */
+    static long fingerprint(String key) {
+        // FNV-1a, then a final mix
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = mix(h);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
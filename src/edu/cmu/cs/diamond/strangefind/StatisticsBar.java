@@ -44,8 +44,6 @@ import java.util.Map;
 
 import javax.swing.JProgressBar;
 
-import edu.cmu.cs.diamond.opendiamond.ServerStatistics;
-
 public class StatisticsBar extends JProgressBar {
     public StatisticsBar() {
         super();
@@ -65,11 +63,11 @@ public class StatisticsBar extends JProgressBar {
         setValue(searched);
     }
 
-    public void update(Map<String, ServerStatistics> serverStats) {
+    public void update(Map<String, SearchStatistics> serverStats) {
         int t = 0;
         int s = 0;
         int d = 0;
-        for (ServerStatistics ss : serverStats.values()) {
+        for (SearchStatistics ss : serverStats.values()) {
             t += ss.getTotalObjects();
             s += ss.getProcessedObjects();
             d += ss.getDroppedObjects();
@@ -77,6 +75,12 @@ public class StatisticsBar extends JProgressBar {
         setNumbers(t, s, d);
     }
 
+    public void setMessage(String message) {
+        setIndeterminate(false);
+        setValue(0);
+        setString(message);
+    }
+
     public void setIndeterminateMessage(String message) {
         setIndeterminate(true);
         setString(message);
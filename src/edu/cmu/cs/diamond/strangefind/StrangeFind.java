@@ -47,12 +47,17 @@ import static java.awt.event.KeyEvent.VK_D;
 import static java.awt.event.KeyEvent.VK_E;
 import static java.awt.event.KeyEvent.VK_H;
 import static java.awt.event.KeyEvent.VK_I;
+import static java.awt.event.KeyEvent.VK_J;
 import static java.awt.event.KeyEvent.VK_L;
+import static java.awt.event.KeyEvent.VK_M;
 import static java.awt.event.KeyEvent.VK_N;
 import static java.awt.event.KeyEvent.VK_O;
 import static java.awt.event.KeyEvent.VK_P;
 import static java.awt.event.KeyEvent.VK_Q;
+import static java.awt.event.KeyEvent.VK_R;
 import static java.awt.event.KeyEvent.VK_S;
+import static java.awt.event.KeyEvent.VK_T;
+import static java.awt.event.KeyEvent.VK_U;
 import static java.awt.event.KeyEvent.VK_V;
 
 import java.awt.BorderLayout;
@@ -61,6 +66,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.beans.XMLDecoder;
 import java.beans.XMLEncoder;
 import java.io.*;
@@ -72,10 +79,10 @@ import javax.swing.*;
 import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
-import javax.swing.table.AbstractTableModel;
 
 import edu.cmu.cs.diamond.opendiamond.*;
 import edu.cmu.cs.diamond.strangefind.search.CircleAnomalyFilter;
+import edu.cmu.cs.diamond.strangefind.search.FilterArguments;
 import edu.cmu.cs.diamond.strangefind.search.NeuriteAnomalyFilter;
 import edu.cmu.cs.diamond.strangefind.search.NeuriteMultiplaneAnomalyFilter;
 import edu.cmu.cs.diamond.strangefind.search.OOMuscleAnomalyFilter;
@@ -91,6 +98,10 @@ public class StrangeFind extends JFrame {
             .userNodeForPackage(StrangeFind.class);
 
     public class SessionVariablesWindow extends JFrame {
+        // shows the variables of the selected tab
+        final JTable table = new JTable(getSelectedTab()
+                .getSessionVariablesTableModel());
+
         public SessionVariablesWindow() {
             super("Session Variables");
             setLocationByPlatform(true);
@@ -102,14 +113,14 @@ public class StrangeFind extends JFrame {
 
             save.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
-                    saveVariables(globalSessionVariables);
+                    saveVariables(getSelectedTab().getSessionVariables());
                 }
             });
 
             clear.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
                     try {
-                        clearSessionVariables();
+                        getSelectedTab().clearSessionVariables();
                     } catch (IOException e1) {
                         e1.printStackTrace();
                     } catch (InterruptedException e1) {
@@ -120,7 +131,7 @@ public class StrangeFind extends JFrame {
 
             load.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
-                    loadVariables(globalSessionVariables);
+                    loadVariables(getSelectedTab());
                 }
             });
             Box v = Box.createVerticalBox();
@@ -151,7 +162,10 @@ public class StrangeFind extends JFrame {
                     if (val == neverValue) {
                         val = -1;
                     }
-                    results.setSessionVariableUpdateInterval(val);
+                    sessionVariablesInterval = val;
+                    for (SearchTab tab : tabs) {
+                        tab.getResults().setSessionVariableUpdateInterval(val);
+                    }
                 }
             });
 
@@ -168,9 +182,8 @@ public class StrangeFind extends JFrame {
 
             add(v, BorderLayout.SOUTH);
 
-            JTable t = new JTable(sessionVariablesTableModel);
-            t.setTableHeader(null);
-            JScrollPane jsp = new JScrollPane(t);
+            table.setTableHeader(null);
+            JScrollPane jsp = new JScrollPane(table);
             add(jsp);
 
             pack();
@@ -178,7 +191,8 @@ public class StrangeFind extends JFrame {
 
         JFileChooser loadChooser = new JFileChooser();
 
-        protected void loadVariables(Map<String, Double> sv) {
+        protected void loadVariables(SearchTab tab) {
+            Map<String, Double> sv = tab.getSessionVariables();
             loadChooser.setDialogTitle("Load Session Variables");
             int returnVal = loadChooser.showOpenDialog(this);
             if (returnVal == JFileChooser.APPROVE_OPTION) {
@@ -191,7 +205,7 @@ public class StrangeFind extends JFrame {
                     d.close();
                     sv
                             .putAll((Map<? extends String, ? extends Double>) (result));
-                    sessionVariablesTableModel.fireTableDataChanged();
+                    tab.getSessionVariablesTableModel().fireTableDataChanged();
                 } catch (FileNotFoundException e) {
                     // TODO Auto-generated catch block
                     e.printStackTrace();
@@ -230,11 +244,12 @@ public class StrangeFind extends JFrame {
 
         final private Timer statsTimer = new Timer(500, new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                ResultSource search = getSelectedTab().getSearch();
                 if (search == null) {
                     return;
                 }
 
-                Map<String, ServerStatistics> stats = null;
+                Map<String, SearchStatistics> stats = null;
                 try {
                     stats = search.getStatistics();
                 } catch (SearchClosedException e1) {
@@ -254,10 +269,10 @@ public class StrangeFind extends JFrame {
                 }
 
                 // update
-                for (Map.Entry<String, ServerStatistics> entry : stats
+                for (Map.Entry<String, SearchStatistics> entry : stats
                         .entrySet()) {
                     String name = entry.getKey();
-                    ServerStatistics s = entry.getValue();
+                    SearchStatistics s = entry.getValue();
                     JProgressBar jp = servers.get(name);
                     if (jp == null) {
                         // create new
@@ -338,41 +353,23 @@ public class StrangeFind extends JFrame {
 
     final protected JButton resetStateButton = new JButton("Clear Session");
 
-    protected Search search;
+    // one per search, each with its own results and session variables
+    final protected JTabbedPane resultTabs = new JTabbedPane();
 
-    protected SearchFactory factory;
+    final private List<SearchTab> tabs = new ArrayList<SearchTab>();
 
-    final private Map<String, Double> globalSessionVariables = new TreeMap<String, Double>();
+    private int tabsCreated;
 
-    final public AbstractTableModel sessionVariablesTableModel = new AbstractTableModel() {
-        public int getColumnCount() {
-            return 2;
-        }
-
-        public int getRowCount() {
-            return globalSessionVariables.size();
-        }
+    private int sessionVariablesInterval = INITIAL_SESSION_VARIABLES_UPDATE_INTERVAL;
 
-        public Object getValueAt(int rowIndex, int columnIndex) {
-            // inefficient?
-            switch (columnIndex) {
-            case 0:
-                return globalSessionVariables.keySet().toArray()[rowIndex];
-            case 1:
-                return globalSessionVariables.values().toArray()[rowIndex];
-            default:
-                return null;
-            }
-        }
-    };
+    private File exportFile;
 
-    final protected ThumbnailBox results = new ThumbnailBox(
-            globalSessionVariables, sessionVariablesTableModel, stopButton,
-            startButton);
+    // whether a search has exported to exportFile since it was chosen
+    private boolean exportFileUsed;
 
     private JFrame progressWindow;
 
-    private JFrame sessionVariablesWindow;
+    private SessionVariablesWindow sessionVariablesWindow;
 
     protected CookieMap cookieMap = CookieMap.emptyCookieMap();
 
@@ -386,6 +383,13 @@ public class StrangeFind extends JFrame {
             e2.printStackTrace();
         }
 
+        addTab();
+        resultTabs.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                selectedTabChanged();
+            }
+        });
+
         setupMenu();
 
         // buttons
@@ -403,30 +407,48 @@ public class StrangeFind extends JFrame {
 
         startButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                // start
-                startButton.setEnabled(false);
-                stopButton.setEnabled(true);
-                factory = prepareSearchFactory();
+                // start, in a new tab if this one is busy
+                String names[];
                 try {
-                    search = prepareSearch();
-                } catch (IOException e1) {
-                    e1.printStackTrace();
-                } catch (InterruptedException e1) {
-                    Thread.currentThread().interrupt();
+                    names = searchList.getDescriptorNames();
+                } catch (IllegalArgumentException e1) {
+                    // searches that cannot run together
+                    JOptionPane.showMessageDialog(StrangeFind.this, e1
+                            .getMessage());
+                    return;
                 }
 
-                // XXX
-                Annotator[] ans = searchList.getAnnotators();
-                Decorator[] des = searchList.getDecorators();
-
-                if (ans.length > 0) {
-                    results.setAnnotator(ans[0]);
+                rememberSearches();
+                ResultSource search = null;
+                if (syntheticItem.isSelected()) {
+                    search = syntheticBackend.createSearch(names);
+                } else {
+                    // each search keeps its own, whatever starts next
+                    SearchFactory factory = prepareSearchFactory();
+                    try {
+                        search = new DiamondSource(prepareSearch(factory),
+                                factory);
+                    } catch (IOException e1) {
+                        e1.printStackTrace();
+                    } catch (InterruptedException e1) {
+                        Thread.currentThread().interrupt();
+                    }
                 }
-                if (des.length > 0) {
-                    results.setDecorator(des[0]);
+                if (search == null) {
+                    return;
                 }
 
-                results.start(search, factory);
+                SearchTab tab = getIdleTab();
+                ThumbnailBox results = tab.getResults();
+                configureResults(results);
+                results.setScopeId(syntheticItem.isSelected() ? "synthetic"
+                        : LocalStorage.getScopeId());
+                results.setRecordJournal(recordJournalItem.isSelected(),
+                        journalDataItem.isSelected());
+                tab.setExportFile(getExportFile());
+
+                tab.start(search);
+                updateButtons();
             }
         });
 
@@ -436,7 +458,7 @@ public class StrangeFind extends JFrame {
                 System.out.println(" *** stop search");
                 stopButton.setEnabled(false);
                 try {
-                    results.stop();
+                    getSelectedTab().stop();
                 } catch (InterruptedException e1) {
                     Thread.currentThread().interrupt();
                 }
@@ -452,7 +474,7 @@ public class StrangeFind extends JFrame {
 
                 if (result == JOptionPane.OK_OPTION) {
                     try {
-                        clearSessionVariables();
+                        getSelectedTab().clearSessionVariables();
                     } catch (IOException e1) {
                         e1.printStackTrace();
                     } catch (InterruptedException e1) {
@@ -467,7 +489,39 @@ public class StrangeFind extends JFrame {
         pack();
     }
 
-    protected Search prepareSearch() throws IOException, InterruptedException {
+    private void configureResults(ThumbnailBox results) {
+        configureResults(results, searchList.getSearches());
+    }
+
+    private void configureResults(ThumbnailBox results,
+            List<StrangeFindSearch> searches) {
+        // XXX
+        Annotator[] ans = SearchList.getAnnotators(searches);
+        Decorator[] des = SearchList.getDecorators(searches);
+
+        if (ans.length > 0) {
+            results.setAnnotator(ans[0]);
+        }
+        if (des.length > 0) {
+            results.setDecorator(des[0]);
+        }
+        results.setDescriptorNames(SearchList.getDescriptorNames(searches));
+        results.setSearchConfiguration(SearchConfiguration
+                .toString(searches));
+    }
+
+    /**
+     * Returns the searches a journal was recorded with, or the current ones
+     * if it does not say.
+     */
+    private List<StrangeFindSearch> getSearches(JournalReader j)
+            throws IOException {
+        List<StrangeFindSearch> searches = j.getSearches();
+        return searches != null ? searches : searchList.getSearches();
+    }
+
+    protected Search prepareSearch(SearchFactory factory) throws IOException,
+            InterruptedException {
         Set<String> pushAttributes = searchList.getPushAttributes();
         return factory.createSearch(pushAttributes);
     }
@@ -523,10 +577,104 @@ public class StrangeFind extends JFrame {
 
         // right side
         Box c2 = Box.createVerticalBox();
-        c2.add(results);
+        c2.add(resultTabs);
         b.add(c2);
     }
 
+    private SearchTab addTab() {
+        final SearchTab tab = new SearchTab(++tabsCreated);
+        ThumbnailBox results = tab.getResults();
+        results.setSessionVariableUpdateInterval(sessionVariablesInterval);
+        results.addPropertyChangeListener(ThumbnailBox.SEARCH_FINISHED,
+                new PropertyChangeListener() {
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        updateButtons();
+                    }
+                });
+
+        tabs.add(tab);
+        resultTabs.addTab(tab.getTitle(), results);
+        resultTabs.setSelectedComponent(results);
+        return tab;
+    }
+
+    protected SearchTab getSelectedTab() {
+        return tabs.get(resultTabs.getSelectedIndex());
+    }
+
+    // the selected tab, or a new one if a search is running in it
+    private SearchTab getIdleTab() {
+        SearchTab tab = getSelectedTab();
+        if (tab.isRunning()) {
+            tab = addTab();
+        }
+        return tab;
+    }
+
+    private void selectedTabChanged() {
+        if (resultTabs.getSelectedIndex() == -1) {
+            return;
+        }
+        updateButtons();
+        if (sessionVariablesWindow != null) {
+            sessionVariablesWindow.table.setModel(getSelectedTab()
+                    .getSessionVariablesTableModel());
+        }
+    }
+
+    private void updateButtons() {
+        stopButton.setEnabled(getSelectedTab().isRunning());
+    }
+
+    protected void closeResults() {
+        SearchTab tab = getSelectedTab();
+        if (tab.isRunning()) {
+            JOptionPane.showMessageDialog(this,
+                    "Stop the search in this tab first.");
+            return;
+        }
+
+        tab.dispose();
+        tabs.remove(tab);
+        resultTabs.remove(tab.getResults());
+        if (tabs.isEmpty()) {
+            addTab();
+        }
+    }
+
+    /**
+     * Returns the file a search started now exports to, or null. The first
+     * search after the file was chosen writes it; later ones get a numbered
+     * name beside it, so no export is overwritten or written twice at once.
+     */
+    private File getExportFile() {
+        File f = exportFile;
+        if (f == null) {
+            return null;
+        }
+
+        String name = f.getName();
+        int dot = name.lastIndexOf('.');
+        File result = f;
+        for (int i = 2; exportFileUsed && result.exists()
+                || isExporting(result); i++) {
+            String numbered = dot > 0 ? name.substring(0, dot) + "-" + i
+                    + name.substring(dot) : name + "-" + i;
+            result = new File(f.getParentFile(), numbered);
+        }
+        exportFileUsed = true;
+        return result;
+    }
+
+    private boolean isExporting(File f) {
+        for (SearchTab t : tabs) {
+            if (t.isRunning() && f.equals(t.getExportFile())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void setupMenu() {
         JMenuBar jmb = new JMenuBar();
 
@@ -542,6 +690,26 @@ public class StrangeFind extends JFrame {
         menu.add(itemNew);
         populateFiltersMenu(itemNew);
 
+        menu.add(createMenuItem("Load Searches...", VK_L,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        loadSearches();
+                    }
+                }));
+        menu.add(createMenuItem("Save Searches...", VK_V,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        saveSearches();
+                    }
+                }));
+        menu.add(createMenuItem("Restore Last Searches", VK_T,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        restoreLastSearches();
+                    }
+                }));
+        menu.addSeparator();
+
         menu.add(createMenuItem("Configure Image Server...", VK_C,
                 new ActionListener() {
                     @Override
@@ -550,6 +718,49 @@ public class StrangeFind extends JFrame {
                     }
                 }));
 
+        deterministicItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                FilterArguments.setDeterministic(deterministicItem
+                        .isSelected());
+            }
+        });
+        menu.add(deterministicItem);
+
+        menu.add(createMenuItem("Export Results...", VK_E,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        chooseExportFile();
+                    }
+                }));
+
+        menu.add(createMenuItem("Stop Exporting", VK_O, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                exportFile = null;
+            }
+        }));
+
+        menu.addSeparator();
+        menu.add(recordJournalItem);
+        menu.add(journalDataItem);
+        menu.add(createMenuItem("Open Journal...", VK_J, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                openJournal();
+            }
+        }));
+        menu.add(createMenuItem("Replay Journal...", VK_R,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        replayJournal();
+                    }
+                }));
+
+        menu.addSeparator();
+        menu.add(createMenuItem("Close Results", VK_U, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                closeResults();
+            }
+        }));
+
         menu.addSeparator();
         mi = createMenuItem("Quit", VK_Q, new ActionListener() {
             public void actionPerformed(ActionEvent e) {
@@ -580,6 +791,15 @@ public class StrangeFind extends JFrame {
         mi.setAccelerator(KeyStroke.getKeyStroke(VK_V, CTRL_DOWN_MASK));
         menu.add(mi);
 
+        menu.add(syntheticItem);
+
+        mi = createMenuItem("Pipeline Metrics", VK_M, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showPipelineMetrics();
+            }
+        });
+        menu.add(mi);
+
         jmb.add(menu);
 
         // Help
@@ -621,6 +841,191 @@ public class StrangeFind extends JFrame {
         sessionVariablesWindow.setVisible(true);
     }
 
+    final private SyntheticBackend syntheticBackend = new SyntheticBackend(
+            System.getProperties());
+
+    final private JCheckBoxMenuItem syntheticItem = new JCheckBoxMenuItem(
+            "Use Synthetic Servers", SyntheticBackend.isEnabled());
+
+    // lets servers reuse feature extraction results from earlier runs
+    final private JCheckBoxMenuItem deterministicItem = new JCheckBoxMenuItem(
+            "Cache Feature Extraction on Servers", FilterArguments
+                    .isDeterministic());
+
+    final private JCheckBoxMenuItem recordJournalItem = new JCheckBoxMenuItem(
+            "Record Journal");
+
+    final private JCheckBoxMenuItem journalDataItem = new JCheckBoxMenuItem(
+            "Record Object Data in Journal");
+
+    final private JFileChooser journalChooser = new JFileChooser(LocalStorage
+            .getDirectory("journal"));
+
+    protected void openJournal() {
+        journalChooser.setDialogTitle("Open Journal");
+        journalChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        int returnVal = journalChooser.showOpenDialog(this);
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            try {
+                JournalReader j = new JournalReader(journalChooser
+                        .getSelectedFile());
+                SearchTab tab = getIdleTab();
+                configureResults(tab.getResults(), getSearches(j));
+                tab.browse(j);
+            } catch (IOException e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Cannot open journal: "
+                        + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs a recorded session through the display again, at a chosen rate,
+     * as if it were a live search.
+     */
+    protected void replayJournal() {
+        journalChooser.setDialogTitle("Replay Journal");
+        journalChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        int returnVal = journalChooser.showOpenDialog(this);
+        if (returnVal != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        String rate = JOptionPane.showInputDialog(this,
+                "Results per second (0 for as fast as possible):", "0");
+        if (rate == null) {
+            return;
+        }
+
+        try {
+            JournalReader j = new JournalReader(journalChooser
+                    .getSelectedFile());
+            List<StrangeFindSearch> searches = getSearches(j);
+
+            ResultSource search = new JournalSource(j, Double
+                    .parseDouble(rate), SearchList
+                    .getDescriptorNames(searches));
+
+            SearchTab tab = getIdleTab();
+            ThumbnailBox results = tab.getResults();
+            configureResults(results, searches);
+            results.setScopeId("replay-" + j.getDirectory().getName());
+            results.setRecordJournal(false, false);
+            tab.setExportFile(getExportFile());
+
+            tab.start(search);
+            updateButtons();
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Not a number: " + rate);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Cannot open journal: "
+                    + e.getMessage());
+        }
+    }
+
+    final private JFileChooser searchesChooser = new JFileChooser(
+            LocalStorage.getDirectory("searches"));
+
+    protected void saveSearches() {
+        searchesChooser.setDialogTitle("Save Searches");
+        int returnVal = searchesChooser.showSaveDialog(this);
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            try {
+                SearchConfiguration.write(searchesChooser.getSelectedFile(),
+                        searchList.getSearches());
+            } catch (IOException e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Cannot save searches: "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    protected void loadSearches() {
+        searchesChooser.setDialogTitle("Load Searches");
+        int returnVal = searchesChooser.showOpenDialog(this);
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            loadSearches(searchesChooser.getSelectedFile());
+        }
+    }
+
+    protected void restoreLastSearches() {
+        File f = getLastSearchesFile();
+        if (!f.isFile()) {
+            JOptionPane.showMessageDialog(this, "No searches were run yet.");
+            return;
+        }
+        loadSearches(f);
+    }
+
+    private void loadSearches(File f) {
+        // running searches keep the filters they were started with
+        List<StrangeFindSearch> searches;
+        try {
+            searches = SearchConfiguration.read(f);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Cannot load searches: "
+                    + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Cannot load searches: "
+                    + e.getMessage());
+            return;
+        }
+
+        searchList.clearSearches();
+        for (StrangeFindSearch s : searches) {
+            searchList.addSearch(s);
+        }
+    }
+
+    private static File getLastSearchesFile() {
+        return new File(LocalStorage.getDirectory("searches"),
+                "last.properties");
+    }
+
+    private void rememberSearches() {
+        // kept by digest, so any run can be traced back to its settings
+        List<StrangeFindSearch> searches = searchList.getSearches();
+        if (searches.isEmpty()) {
+            return;
+        }
+        try {
+            File f = new File(LocalStorage.getDirectory("searches"),
+                    SearchConfiguration.getDigest(searches) + ".properties");
+            SearchConfiguration.write(f, searches);
+            SearchConfiguration.write(getLastSearchesFile(), searches);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    final private JFileChooser exportChooser = new JFileChooser();
+
+    protected void chooseExportFile() {
+        exportChooser.setDialogTitle("Export Results of Next Searches");
+        int returnVal = exportChooser.showSaveDialog(this);
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            exportFile = exportChooser.getSelectedFile();
+            exportFileUsed = false;
+        }
+    }
+
+    protected void showPipelineMetrics() {
+        JTextArea text = new JTextArea(PipelineMetrics.getInstance()
+                .getReport());
+        text.setEditable(false);
+        JOptionPane.showMessageDialog(this, new JScrollPane(text),
+                "Pipeline Metrics", JOptionPane.INFORMATION_MESSAGE);
+    }
+
     protected void showProgressWindow() {
         if (progressWindow == null) {
             progressWindow = new ProgressWindow();
@@ -679,20 +1084,6 @@ public class StrangeFind extends JFrame {
         itemNew.add(mi);
     }
 
-    private void clearSessionVariables() throws IOException,
-            InterruptedException {
-        // clear locally
-        globalSessionVariables.clear();
-
-        // clear on server
-        try {
-            search.clearSessionVariables();
-        } catch (SearchClosedException e) {
-            // ignore
-        }
-        sessionVariablesTableModel.fireTableDataChanged();
-    }
-
     static String getImageHost() {
         String host = prefs.get(HTTP_IMAGE_HOST_PREFS_KEY, "localhost");
         return host;
@@ -40,21 +40,37 @@
 
 package edu.cmu.cs.diamond.strangefind;
 
+import java.util.Properties;
 import java.util.Set;
 
 import javax.swing.JPanel;
 
-import edu.cmu.cs.diamond.opendiamond.Filter;
+import edu.cmu.cs.diamond.strangefind.search.AnomalyStage;
+import edu.cmu.cs.diamond.strangefind.search.FilterStage;
 
 public interface StrangeFindSearch {
     // XXX rethink
     JPanel getInterface();
 
-    Filter[] getFilters();
+    // feature extraction, in dependency order
+    FilterStage[] getFilters();
+
+    AnomalyStage getAnomalyStage();
 
     Annotator getAnnotator();
 
     Decorator getDecorator();
 
     Set<String> getPushAttributes();
+
+    String[] getDescriptorNames();
+
+    // where the descriptors are numbered among those of all searches run
+    // together: descriptor i is indices[i]
+    void setDescriptorIndices(int indices[]);
+
+    // settings as in a search configuration; keys left out are unchanged
+    void setConfiguration(Properties p);
+
+    Properties getConfiguration();
 }
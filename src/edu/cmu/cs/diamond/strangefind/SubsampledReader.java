@@ -0,0 +1,114 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes images at roughly a requested size by letting the reader skip
+ * rows and columns, instead of decoding everything and scaling down.
+ */
+public class SubsampledReader {
+    public static class Decoded {
+        final public BufferedImage img;
+
+        // decoded width / full width
+        final public double scale;
+
+        Decoded(BufferedImage img, double scale) {
+            this.img = img;
+            this.scale = scale;
+        }
+    }
+
+    private SubsampledReader() {
+    }
+
+    /**
+     * Reads the first image from input (anything accepted by
+     * {@link ImageIO#createImageInputStream(Object)}), subsampled so that it
+     * is no smaller than width x height. Returns null if no reader
+     * understands the input.
+     */
+    public static Decoded read(Object input, int width, int height)
+            throws IOException {
+        ImageInputStream in = ImageIO.createImageInputStream(input);
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+
+                int fullWidth = reader.getWidth(0);
+                int fullHeight = reader.getHeight(0);
+                int step = Math.max(1, Math.min(fullWidth / width, fullHeight
+                        / height));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage img = reader.read(0, param);
+
+                PipelineMetrics.getInstance().increment(
+                        "thumbnail.subsampled-decodes");
+                return new Decoded(img, (double) img.getWidth() / fullWidth);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
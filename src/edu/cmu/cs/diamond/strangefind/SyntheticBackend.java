@@ -0,0 +1,294 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import edu.cmu.cs.diamond.strangefind.search.FilterArguments;
+
+/**
+ * Stand-in for Diamond servers, for running and load testing the client
+ * without a cluster. Simulates a number of servers, each evaluating its
+ * share of a scope at a set rate and sending back the objects found
+ * anomalous, with thumbnails, circle data and anomaly descriptors computed
+ * the same way as fil_anomaly does from the session variables. As with the
+ * servers' cache, a search given the same anomaly nonce as the last one
+ * does not evaluate its objects again: its servers carry on where those of
+ * the last search stopped, so only objects added since, by raising
+ * objectsPerServer, are evaluated.
+ * <p>
+ * Parameters can be given as system properties with the prefix
+ * "strangefind.synthetic.", for example
+ * -Dstrangefind.synthetic.servers=500.
+ */
+public class SyntheticBackend {
+    public static final String PROPERTY_PREFIX = "strangefind.synthetic.";
+
+    // distinct thumbnails to choose from
+    private static final int THUMBNAIL_POOL_SIZE = 16;
+
+    private static final int THUMBNAIL_SIZE = 200;
+
+    private int servers = 4;
+
+    private int objectsPerServer = 10000;
+
+    // per server, 0 for as fast as possible
+    private double objectsPerSecond = 200;
+
+    private int latencyMillis = 20;
+
+    private int imageWidth = 1024;
+
+    private int imageHeight = 768;
+
+    private int circlesPerImage = 50;
+
+    private double anomalyRate = 0.01;
+
+    private double sigma = 3;
+
+    private int minCount = 10;
+
+    private long seed = 1;
+
+    private byte thumbnails[][];
+
+    // the last search, and the anomaly nonce it was started with
+    private SyntheticSource lastSearch;
+
+    private String lastNonce;
+
+    public SyntheticBackend() {
+    }
+
+    /**
+     * Reads the parameters given in p, keeping the defaults for the others.
+     */
+    public SyntheticBackend(Properties p) {
+        servers = getInt(p, "servers", servers);
+        objectsPerServer = getInt(p, "objectsPerServer", objectsPerServer);
+        objectsPerSecond = getDouble(p, "objectsPerSecond", objectsPerSecond);
+        latencyMillis = getInt(p, "latencyMillis", latencyMillis);
+        imageWidth = getInt(p, "imageWidth", imageWidth);
+        imageHeight = getInt(p, "imageHeight", imageHeight);
+        circlesPerImage = getInt(p, "circlesPerImage", circlesPerImage);
+        anomalyRate = getDouble(p, "anomalyRate", anomalyRate);
+        sigma = getDouble(p, "sigma", sigma);
+        minCount = getInt(p, "minCount", minCount);
+        seed = getInt(p, "seed", (int) seed);
+    }
+
+    /**
+     * Returns true if the synthetic backend was asked for on the command
+     * line.
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY_PREFIX + "enabled");
+    }
+
+    /**
+     * Starts a search over the synthetic scope, producing the first n
+     * anomaly descriptors with the given names.
+     */
+    public synchronized ResultSource createSearch(String descriptorNames[]) {
+        if (thumbnails == null) {
+            thumbnails = new byte[THUMBNAIL_POOL_SIZE][];
+            double scale = Math.min((double) THUMBNAIL_SIZE / imageWidth,
+                    (double) THUMBNAIL_SIZE / imageHeight);
+            for (int i = 0; i < thumbnails.length; i++) {
+                thumbnails[i] = encode(createImage(seed + i,
+                        (int) (imageWidth * scale),
+                        (int) (imageHeight * scale)), "jpeg");
+            }
+        }
+        // the search keeps this pool even if the image size changes
+        String nonce = FilterArguments.getAnomalyNonce();
+        lastSearch = new SyntheticSource(this, descriptorNames, thumbnails,
+                nonce.equals(lastNonce) ? lastSearch : null);
+        lastNonce = nonce;
+        return lastSearch;
+    }
+
+    /**
+     * Returns the full image of an object, as PNG.
+     */
+    byte[] getObjectData(SyntheticResult r) {
+        return encode(createImage(r.getSeed(), imageWidth, imageHeight),
+                "png");
+    }
+
+    private static BufferedImage createImage(long seed, int w, int h) {
+        Random r = new Random(seed);
+        BufferedImage img = new BufferedImage(w, h,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, w, h);
+        for (int i = 0; i < 40; i++) {
+            g.setColor(new Color(r.nextInt(256), r.nextInt(256), r
+                    .nextInt(256), 128));
+            int d = 2 + r.nextInt(Math.max(1, Math.min(w, h) / 8));
+            g.fillOval(r.nextInt(Math.max(1, w)), r.nextInt(Math.max(1, h)),
+                    d, d);
+        }
+        g.dispose();
+        return img;
+    }
+
+    private static byte[] encode(BufferedImage img, String format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(img, format, out);
+        } catch (IOException e) {
+            // in memory
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static int getInt(Properties p, String name, int def) {
+        String v = p.getProperty(PROPERTY_PREFIX + name);
+        return v == null ? def : Integer.parseInt(v.trim());
+    }
+
+    private static double getDouble(Properties p, String name, double def) {
+        String v = p.getProperty(PROPERTY_PREFIX + name);
+        return v == null ? def : Double.parseDouble(v.trim());
+    }
+
+    public int getServers() {
+        return servers;
+    }
+
+    public void setServers(int servers) {
+        this.servers = servers;
+    }
+
+    public int getObjectsPerServer() {
+        return objectsPerServer;
+    }
+
+    public void setObjectsPerServer(int objectsPerServer) {
+        this.objectsPerServer = objectsPerServer;
+    }
+
+    public double getObjectsPerSecond() {
+        return objectsPerSecond;
+    }
+
+    public void setObjectsPerSecond(double objectsPerSecond) {
+        this.objectsPerSecond = objectsPerSecond;
+    }
+
+    public int getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public void setLatencyMillis(int latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public synchronized void setImageSize(int width, int height) {
+        imageWidth = width;
+        imageHeight = height;
+        thumbnails = null;
+    }
+
+    public int getCirclesPerImage() {
+        return circlesPerImage;
+    }
+
+    public void setCirclesPerImage(int circlesPerImage) {
+        this.circlesPerImage = circlesPerImage;
+    }
+
+    public double getAnomalyRate() {
+        return anomalyRate;
+    }
+
+    public void setAnomalyRate(double anomalyRate) {
+        this.anomalyRate = anomalyRate;
+    }
+
+    public double getSigma() {
+        return sigma;
+    }
+
+    public void setSigma(double sigma) {
+        this.sigma = sigma;
+    }
+
+    public int getMinCount() {
+        return minCount;
+    }
+
+    public void setMinCount(int minCount) {
+        this.minCount = minCount;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+}
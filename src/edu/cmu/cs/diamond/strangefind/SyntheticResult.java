@@ -0,0 +1,95 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A result made up by {@link SyntheticSource}. The object body is only
+ * generated when asked for.
+ */
+public class SyntheticResult implements SearchResult {
+    final private String name;
+
+    final private String serverName;
+
+    final private long seed;
+
+    final private Map<String, byte[]> attributes;
+
+    SyntheticResult(String name, String serverName, long seed,
+            Map<String, byte[]> attributes) {
+        this.name = name;
+        this.serverName = serverName;
+        this.seed = seed;
+        this.attributes = attributes;
+    }
+
+    public byte[] getValue(String key) {
+        return attributes.get(key);
+    }
+
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(attributes.keySet());
+    }
+
+    public byte[] getData() {
+        return new byte[0];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public String getObjectKey() {
+        return serverName + ":" + seed;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A search running on simulated servers, see {@link SyntheticBackend}.
+ */
+public class SyntheticSource implements ResultSource {
+    // results in flight, across all servers
+    private static final int QUEUE_SIZE = 1000;
+
+    private static final int TICK_MILLIS = 10;
+
+    // objects per tick when there is no rate limit
+    private static final int UNLIMITED_BATCH = 500;
+
+    private static class Pending {
+        final SearchResult result;
+
+        final long deliverAt;
+
+        Pending(SearchResult result, long deliverAt) {
+            this.result = result;
+            this.deliverAt = deliverAt;
+        }
+    }
+
+    final private SyntheticBackend backend;
+
+    final private String names[];
+
+    // true distribution of each descriptor
+    final private double trueMean[];
+
+    final private double trueStddev[];
+
+    // encoded thumbnails, chosen from by object seed
+    final private byte thumbnails[][];
+
+    final private List<Server> servers = new ArrayList<Server>();
+
+    final private BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>(
+            QUEUE_SIZE);
+
+    final private AtomicInteger running = new AtomicInteger();
+
+    final private ScheduledExecutorService executor;
+
+    private volatile boolean closed;
+
+    /**
+     * Starts the simulated servers. If resume is not null, which must have
+     * been closed, each server carries on where the one of the same number
+     * in resume stopped.
+     */
+    SyntheticSource(SyntheticBackend backend, String descriptorNames[],
+            byte thumbnails[][], SyntheticSource resume) {
+        this.backend = backend;
+        names = descriptorNames.clone();
+        this.thumbnails = thumbnails;
+
+        Random r = new Random(backend.getSeed());
+        trueMean = new double[names.length];
+        trueStddev = new double[names.length];
+        for (int i = 0; i < names.length; i++) {
+            trueMean[i] = 10 + r.nextDouble() * 100;
+            trueStddev[i] = 1 + r.nextDouble() * 10;
+        }
+
+        int n = backend.getServers();
+        executor = Executors.newScheduledThreadPool(Math.min(n, Runtime
+                .getRuntime().availableProcessors()), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "SyntheticServer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        running.set(n);
+        for (int i = 0; i < n; i++) {
+            long seed = backend.getSeed() * 1000003 + i;
+            Server s = new Server(String.format("synthetic%03d", i), seed);
+            if (resume != null && i < resume.servers.size()) {
+                s.resume(resume.servers.get(i));
+            }
+            servers.add(s);
+            executor.scheduleAtFixedRate(s, 0, TICK_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private class Server implements Runnable {
+        final String name;
+
+        Random random;
+
+        int processed;
+
+        int passed;
+
+        double carry;
+
+        // count, sum, sum of squares for each descriptor
+        final double vars[] = new double[names.length * 3];
+
+        // vars as of the last merge
+        final double base[] = new double[names.length * 3];
+
+        // counted out of running; only read and written by run()
+        boolean finished;
+
+        Server(String name, long seed) {
+            this.name = name;
+            random = new Random(seed);
+        }
+
+        // the objects from has evaluated are not evaluated again
+        void resume(Server from) {
+            synchronized (from) {
+                random = from.random;
+                processed = from.processed;
+                passed = from.passed;
+            }
+        }
+
+        public void run() {
+            if (closed || finished) {
+                return;
+            }
+
+            try {
+                List<SearchResult> found = evaluate();
+
+                long deliverAt = System.currentTimeMillis()
+                        + backend.getLatencyMillis();
+                for (SearchResult r : found) {
+                    // blocks when the client falls behind
+                    queue.put(new Pending(r, deliverAt));
+                }
+
+                // only once the last results are queued, or the client
+                // could see the search end before they arrive
+                if (isExhausted()) {
+                    finish();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // the executor would silently stop scheduling this server
+                e.printStackTrace();
+                finish();
+            }
+        }
+
+        private void finish() {
+            finished = true;
+            running.decrementAndGet();
+        }
+
+        private synchronized boolean isExhausted() {
+            return processed >= backend.getObjectsPerServer();
+        }
+
+        private synchronized List<SearchResult> evaluate() {
+            List<SearchResult> found = new ArrayList<SearchResult>();
+
+            int total = backend.getObjectsPerServer();
+            if (processed >= total) {
+                return found;
+            }
+
+            int n;
+            double rate = backend.getObjectsPerSecond();
+            if (rate > 0) {
+                carry += rate * TICK_MILLIS / 1000.0;
+                n = (int) carry;
+                carry -= n;
+            } else {
+                n = UNLIMITED_BATCH;
+            }
+            n = Math.min(n, total - processed);
+
+            for (int i = 0; i < n; i++) {
+                SearchResult r = evaluateOne();
+                if (r != null) {
+                    found.add(r);
+                    passed++;
+                }
+                processed++;
+            }
+            return found;
+        }
+
+        // same arithmetic as fil_anomaly
+        private SearchResult evaluateOne() {
+            Map<String, byte[]> attrs = new HashMap<String, byte[]>();
+            boolean anomalous = false;
+            for (int i = 0; i < names.length; i++) {
+                double d = trueMean[i] + random.nextGaussian() * trueStddev[i];
+                if (random.nextDouble() < backend.getAnomalyRate()) {
+                    d += (random.nextBoolean() ? 1 : -1) * trueStddev[i]
+                            * (2 * backend.getSigma() * random.nextDouble());
+                }
+
+                int count = (int) vars[i * 3];
+                double sum = vars[i * 3 + 1];
+                double sumSq = vars[i * 3 + 2];
+                double mean = sum / count;
+                double stddev = Math.sqrt((sumSq - mean * sum) / count);
+
+                double s = backend.getSigma();
+                boolean isAnomalous = count > backend.getMinCount()
+                        && (d > mean + s * stddev || d < mean - s * stddev);
+                anomalous |= isAnomalous;
+
+                attrs.put("anomaly-descriptor-value-" + i + ".double",
+                        encodeDouble(d));
+                attrs.put("anomaly-descriptor-count-" + i + ".int",
+                        encodeInt(count));
+                attrs.put("anomaly-descriptor-mean-" + i + ".double",
+                        encodeDouble(mean));
+                attrs.put("anomaly-descriptor-stddev-" + i + ".double",
+                        encodeDouble(stddev));
+                attrs.put("anomaly-descriptor-is_anomalous-" + i + ".int",
+                        encodeInt(isAnomalous ? 1 : 0));
+
+                vars[i * 3] += 1;
+                vars[i * 3 + 1] += d;
+                vars[i * 3 + 2] += d * d;
+            }
+
+            if (!anomalous) {
+                return null;
+            }
+
+            long objectSeed = random.nextLong();
+            attrs.put("thumbnail.jpeg", getThumbnail(objectSeed));
+            attrs.put("_cols.int", encodeInt(backend.getImageWidth()));
+            attrs.put("_rows.int", encodeInt(backend.getImageHeight()));
+            attrs.put("circle-data", createCircles());
+
+            return new SyntheticResult("/synthetic/" + name + "/object-"
+                    + processed + ".png", name, objectSeed, attrs);
+        }
+
+        private byte[] createCircles() {
+            int n = backend.getCirclesPerImage();
+            ByteBuffer b = ByteBuffer.allocate(n * 24);
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < n; i++) {
+                b.putFloat(random.nextFloat() * backend.getImageWidth());
+                b.putFloat(random.nextFloat() * backend.getImageHeight());
+                b.putFloat(5 + random.nextFloat() * 25);
+                b.putFloat(5 + random.nextFloat() * 25);
+                b.putFloat((float) (random.nextFloat() * Math.PI));
+                b.putInt(random.nextInt(4) == 0 ? 0 : 1);
+            }
+            return b.array();
+        }
+
+        synchronized SearchStatistics getStatistics() {
+            return new SearchStatistics(backend.getObjectsPerServer(),
+                    processed, processed - passed);
+        }
+
+        /**
+         * Adds what changed since the last merge to global.
+         */
+        synchronized void collect(double global[]) {
+            for (int i = 0; i < vars.length; i++) {
+                global[i] += vars[i] - base[i];
+            }
+        }
+
+        synchronized void set(double global[]) {
+            System.arraycopy(global, 0, vars, 0, vars.length);
+            System.arraycopy(global, 0, base, 0, base.length);
+        }
+    }
+
+    public SearchResult getNextResult() throws InterruptedException,
+            IOException {
+        while (!closed) {
+            Pending p = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (p == null) {
+                if (running.get() == 0 && queue.isEmpty()) {
+                    return null;
+                }
+                continue;
+            }
+
+            long wait = p.deliverAt - System.currentTimeMillis();
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+            return p.result;
+        }
+        return null;
+    }
+
+    public Map<String, SearchStatistics> getStatistics() {
+        Map<String, SearchStatistics> result = new HashMap<String, SearchStatistics>();
+        for (Server s : servers) {
+            result.put(s.name, s.getStatistics());
+        }
+        return result;
+    }
+
+    public void mergeSessionVariables(Map<String, Double> globalValues) {
+        double global[] = new double[names.length * 3];
+        for (int i = 0; i < names.length; i++) {
+            global[i * 3] = get(globalValues, names[i] + "_count");
+            global[i * 3 + 1] = get(globalValues, names[i] + "_sum");
+            global[i * 3 + 2] = get(globalValues, names[i]
+                    + "_sum_of_squares");
+        }
+
+        for (Server s : servers) {
+            s.collect(global);
+        }
+        for (Server s : servers) {
+            s.set(global);
+        }
+
+        for (int i = 0; i < names.length; i++) {
+            globalValues.put(names[i] + "_count", global[i * 3]);
+            globalValues.put(names[i] + "_sum", global[i * 3 + 1]);
+            globalValues.put(names[i] + "_sum_of_squares", global[i * 3 + 2]);
+        }
+    }
+
+    public void clearSessionVariables() {
+        double zero[] = new double[names.length * 3];
+        for (Server s : servers) {
+            s.set(zero);
+        }
+    }
+
+    public byte[] getData(SearchResult r) {
+        if (r instanceof SyntheticResult) {
+            return backend.getObjectData((SyntheticResult) r);
+        }
+        return r.getData();
+    }
+
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        queue.clear();
+    }
+
+    private byte[] getThumbnail(long objectSeed) {
+        int i = (int) ((objectSeed & Long.MAX_VALUE) % thumbnails.length);
+        return thumbnails[i];
+    }
+
+    private static double get(Map<String, Double> m, String key) {
+        Double d = m.get(key);
+        return d == null ? 0 : d;
+    }
+
+    private static byte[] encodeInt(int i) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(i)
+                .array();
+    }
+
+    private static byte[] encodeDouble(double d) {
+        return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+                .putDouble(d).array();
+    }
+}
@@ -45,36 +45,135 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.table.AbstractTableModel;
 
-import edu.cmu.cs.diamond.opendiamond.*;
+import edu.cmu.cs.diamond.opendiamond.SearchClosedException;
 
 public class ThumbnailBox extends JPanel {
+    /**
+     * Property fired when a search has ended.
+     */
+    public static final String SEARCH_FINISHED = "searchFinished";
+
     volatile protected int nextEmpty = 0;
 
     final static private int ROWS = 3;
 
     final static private int COLS = 3;
 
-    final protected ResultViewer[] pics = new ResultViewer[ROWS * COLS];
+    final protected ResultViewer[] pics;
+
+    // decodes and scales results for display; shared by all result panes,
+    // so that searches running side by side take no more of the client
+    // than one
+    private static final ExecutorService preparationPool = Executors
+            .newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Result preparation");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+
+    // the preparation last submitted for each viewer
+    final protected AtomicReferenceArray<Future<?>> prepared;
+
+    // times clearAll was called, on the AWT thread; preparations queued
+    // before the last call are skipped
+    volatile protected int clears;
 
     final protected JButton nextButton = new JButton("Next");
 
+    // how many pages of ranked results to keep
+    final static private int RANKED_PAGES = 20;
+
+    final protected JComboBox orderBox = new JComboBox(new String[] {
+            "Arrival order", "Max |σ| first", "Summed |σ| first" });
+
+    // non-null when showing the most anomalous results first
+    volatile protected TopKResults ranked;
+
+    volatile protected int rankedPage;
+
+    // what each viewer shows in ranked mode, touched only by the refresher
+    final protected SearchResult[] shownRanked;
+
+    final protected AtomicBoolean rankRefreshing = new AtomicBoolean();
+
+    // a refresh was asked for while one was running; only touched on the
+    // AWT thread
+    protected boolean rankDirty;
+
+    final protected Timer rankTimer = new Timer(2000, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            refreshRanked();
+        }
+    });
+
+    final protected JComboBox seenBox = new JComboBox(new String[] {
+            "All objects", "Skip seen objects", "Mark seen objects" });
+
+    // objects evaluated by earlier searches of the same scope
+    volatile protected SeenSet seen;
+
+    volatile protected boolean skipSeen;
+
+    final protected Set<SearchResult> repeats = Collections
+            .synchronizedSet(Collections
+                    .newSetFromMap(new WeakHashMap<SearchResult, Boolean>()));
+
+    private String scopeId = "default";
+
+    // where to stream the descriptors of received results, if anywhere
+    private File exportFile;
+
+    volatile protected ResultExporter exporter;
+
+    private boolean recordJournal;
+
+    private boolean journalData;
+
+    // what the journal records the searches as
+    private String searchConfiguration;
+
+    volatile protected ResultJournal journal;
+
+    final protected JButton previousButton = new JButton("Previous");
+
+    // non-null when browsing a recorded session
+    volatile protected JournalReader browsing;
+
+    volatile protected int browsingPage;
+
     volatile protected Thread resultGatherer;
 
     volatile protected boolean running;
 
-    protected Search search;
-
-    protected SearchFactory factory;
+    protected ResultSource search;
 
     final protected Object fullSynchronizer = new Object();
 
@@ -82,17 +181,27 @@ public class ThumbnailBox extends JPanel {
 
     protected Decorator decorator;
 
+    private String descriptorNames[] = new String[0];
+
+    // the descriptors of the results received by the current search, which
+    // ranking and export read
+    volatile protected DescriptorStore descriptors;
+
     final protected StatisticsBar stats = new StatisticsBar();
 
     final protected Map<String, Double> globalSessionVariables;
 
+    // a copy of globalSessionVariables made after each merge, by the thread
+    // doing the merge, for ranking to read
+    volatile protected Map<String, Double> mergedSessionVariables;
+
     final protected AbstractTableModel sessionVariablesTableModel;
 
     final protected Timer statsTimer = new Timer(500, new ActionListener() {
         public void actionPerformed(ActionEvent e) {
             // because it is Swing Timer, this is called from the
             // AWT dispatch thread
-            Map<String, ServerStatistics> serverStats = null;
+            Map<String, SearchStatistics> serverStats = null;
             try {
                 serverStats = search.getStatistics();
             } catch (SearchClosedException e1) {
@@ -103,7 +212,7 @@ public class ThumbnailBox extends JPanel {
                 e1.printStackTrace();
             }
             boolean hasStats = false;
-            for (ServerStatistics s : serverStats.values()) {
+            for (SearchStatistics s : serverStats.values()) {
                 if (s.getTotalObjects() != 0) {
                     hasStats = true;
                     break;
@@ -129,6 +238,9 @@ public class ThumbnailBox extends JPanel {
                 // System.out.println("************timer task running");
                 try {
                     search.mergeSessionVariables(globalSessionVariables);
+                    mergedSessionVariables = Collections
+                            .unmodifiableMap(new HashMap<String, Double>(
+                                    globalSessionVariables));
                 } catch (SearchClosedException e) {
                     // ignore
                 } catch (IOException e) {
@@ -156,8 +268,20 @@ public class ThumbnailBox extends JPanel {
     public ThumbnailBox(Map<String, Double> globalSessionVariables,
             AbstractTableModel sessionVariablesTableModel, JButton stopButton,
             JButton startButton) {
+        this(ROWS, COLS, globalSessionVariables, sessionVariablesTableModel,
+                stopButton, startButton);
+    }
+
+    public ThumbnailBox(int rows, int cols,
+            Map<String, Double> globalSessionVariables,
+            AbstractTableModel sessionVariablesTableModel, JButton stopButton,
+            JButton startButton) {
         super();
 
+        pics = new ResultViewer[rows * cols];
+        shownRanked = new SearchResult[pics.length];
+        prepared = new AtomicReferenceArray<Future<?>>(pics.length);
+
         this.globalSessionVariables = globalSessionVariables;
 
         this.sessionVariablesTableModel = sessionVariablesTableModel;
@@ -172,7 +296,7 @@ public class ThumbnailBox extends JPanel {
         Box h = null;
         for (int i = 0; i < pics.length; i++) {
             boolean addBox = false;
-            if (i % COLS == 0) {
+            if (i % cols == 0) {
                 h = Box.createHorizontalBox();
                 addBox = true;
             }
@@ -193,12 +317,42 @@ public class ThumbnailBox extends JPanel {
         h.add(stats);
         h.add(Box.createHorizontalStrut(10));
 
+        orderBox.setMaximumSize(orderBox.getPreferredSize());
+        h.add(orderBox);
+        h.add(Box.createHorizontalStrut(10));
+
+        seenBox.setMaximumSize(seenBox.getPreferredSize());
+        h.add(seenBox);
+        h.add(Box.createHorizontalStrut(10));
+
+        h.add(previousButton);
+        previousButton.setEnabled(false);
+        previousButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                browsingPage--;
+                showBrowsingPage();
+            }
+        });
+
         h.add(nextButton);
         nextButton.setEnabled(false);
         nextButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 // next is clicked
                 nextButton.setEnabled(false);
+                if (browsing != null) {
+                    browsingPage++;
+                    showBrowsingPage();
+                    return;
+                }
+                TopKResults rk = ranked;
+                if (rk != null) {
+                    // wrap around after the last page
+                    int pages = (rk.size() + pics.length - 1) / pics.length;
+                    rankedPage = (rankedPage + 1) % Math.max(1, pages);
+                    refreshRanked();
+                    return;
+                }
                 synchronized (fullSynchronizer) {
                     clearAll();
                     fullSynchronizer.notify();
@@ -217,26 +371,97 @@ public class ThumbnailBox extends JPanel {
         decorator = d;
     }
 
+    /**
+     * Sets the name under which seen objects are remembered.
+     */
+    public void setScopeId(String id) {
+        scopeId = id;
+    }
+
+    /**
+     * Sets the file that the next searches export to, or null.
+     */
+    public void setExportFile(File f) {
+        exportFile = f;
+    }
+
+    /**
+     * Sets whether the next searches are recorded to a journal, and whether
+     * the journal includes object bodies.
+     */
+    public void setRecordJournal(boolean record, boolean includeData) {
+        recordJournal = record;
+        journalData = includeData;
+    }
+
+    /**
+     * Sets the configuration of the searches, as returned by
+     * SearchConfiguration.toString, for journals to record.
+     */
+    public void setSearchConfiguration(String configuration) {
+        searchConfiguration = configuration;
+    }
+
+    public void setDescriptorNames(String names[]) {
+        descriptorNames = names.clone();
+    }
+
     protected boolean isFull() {
         return nextEmpty >= pics.length;
     }
 
+    /**
+     * Empties every viewer once what is being prepared for it is done,
+     * without waiting for that here, so it may be called on the AWT thread.
+     * Later preparations for a viewer wait for it to be emptied.
+     */
     protected void clearAll() {
+        // drop what a finished search left queued
+        clears++;
+
         nextEmpty = 0;
-        for (ResultViewer r : pics) {
-            r.setResult(null, null, null);
-            r.commitResult();
+        for (int i = 0; i < pics.length; i++) {
+            final ResultViewer v = pics[i];
+            final Future<?> f = prepared.get(i);
+            prepared.set(i, preparationPool.submit(new Runnable() {
+                public void run() {
+                    try {
+                        await(f);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    v.setResult(null, null);
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            v.setText(null);
+                            v.commitResult();
+                        }
+                    });
+                }
+            }));
         }
     }
 
-    protected void fillNext(final Result r) {
+    protected void fillNext(final SearchResult r) throws InterruptedException {
         System.out.println("fillNext " + r);
         if (!running) {
             return;
         }
 
         // update
-        final ResultViewer v = pics[nextEmpty++];
+        prepareResult(nextEmpty++, r);
+    }
+
+    /**
+     * Prepares r for viewer i on the shared pool, after anything still being
+     * prepared for that viewer.
+     */
+    protected void prepareResult(int i, final SearchResult r)
+            throws InterruptedException {
+        awaitPrepared(i);
+
+        final ResultViewer v = pics[i];
 
         // loading message
         SwingUtilities.invokeLater(new Runnable() {
@@ -245,29 +470,76 @@ public class ThumbnailBox extends JPanel {
             }
         });
 
+        final int c = clears;
+        prepared.set(i, preparationPool.submit(new Runnable() {
+            public void run() {
+                if (c == clears) {
+                    prepareResult(v, r);
+                }
+            }
+        }));
+    }
+
+    protected void awaitPrepared(int i) throws InterruptedException {
+        await(prepared.get(i));
+    }
+
+    private static void await(Future<?> f) throws InterruptedException {
+        if (f == null) {
+            return;
+        }
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    protected void awaitAllPrepared() throws InterruptedException {
+        for (int i = 0; i < pics.length; i++) {
+            awaitPrepared(i);
+        }
+    }
+
+    protected void prepareResult(final ResultViewer v, final SearchResult r) {
         final String annotation;
         final String nonHTMLAnnotation;
         final String tooltipAnnotation;
         final String oneLineAnnotation;
-        final String verboseAnnotation;
         if (annotator != null) {
             annotation = annotator.annotate(r);
             nonHTMLAnnotation = annotator.annotateNonHTML(r);
             tooltipAnnotation = annotator.annotateTooltip(r);
-            oneLineAnnotation = annotator.annotateOneLine(r);
-            verboseAnnotation = annotator.annotateVerbose(r);
+            String oneLine = annotator.annotateOneLine(r);
+            oneLineAnnotation = repeats.contains(r) ? "(seen) " + oneLine
+                    : oneLine;
         } else {
             annotation = null;
             nonHTMLAnnotation = null;
             tooltipAnnotation = null;
             oneLineAnnotation = null;
-            verboseAnnotation = null;
         }
 
         // do slow activity of loading the item
         v.setResult(new AnnotatedResult(r, annotation, nonHTMLAnnotation,
-                oneLineAnnotation, tooltipAnnotation, verboseAnnotation,
-                decorator), search, factory);
+                oneLineAnnotation, tooltipAnnotation, annotator, decorator),
+                search);
+
+        PipelineMetrics.getInstance().increment("results.prepared");
+
+        // a thumbnail from the image server, say, would be gone offline
+        ResultJournal j = journal;
+        if (j != null && !j.isIncludingData()) {
+            try {
+                Map<String, byte[]> thumbnail = ResultViewer
+                        .getClientThumbnailAttributes(r.getObjectKey());
+                if (thumbnail != null) {
+                    j.appendAttributes(r.getObjectKey(), thumbnail);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
         // update GUI
         SwingUtilities.invokeLater(new Runnable() {
@@ -284,13 +556,46 @@ public class ThumbnailBox extends JPanel {
                 while (running) {
                     // wait for next item
                     System.out.println("wait for next item...");
-                    Result r = search.getNextResult();
+                    SearchResult r = search.getNextResult();
                     System.out.println(" " + r);
 
                     if (r != null) {
                         // we have data
+                        SeenSet s = seen;
+                        if (s != null && !s.add(r.getObjectKey())) {
+                            PipelineMetrics.getInstance().increment(
+                                    "results.duplicate");
+                            if (skipSeen) {
+                                continue;
+                            }
+                            repeats.add(r);
+                        }
+
+                        DescriptorStore ds = descriptors;
+                        int row = ds.append(r);
+
+                        ResultExporter ex = exporter;
+                        if (ex != null) {
+                            ex.write(ds, row);
+                        }
+
+                        ResultJournal j = journal;
+                        if (j != null) {
+                            j.append(r, j.isIncludingData() ? search
+                                    .getData(r) : null);
+                        }
+
+                        TopKResults rk = ranked;
+                        if (rk != null) {
+                            // never blocks, the page is refreshed on a timer
+                            rk.offer(r, ds, row);
+                            continue;
+                        }
 
                         if (isFull()) {
+                            // the page is shown before Next can clear it
+                            awaitAllPrepared();
+
                             // wait
                             synchronized (fullSynchronizer) {
                                 if (isFull()) {
@@ -326,9 +631,44 @@ public class ThumbnailBox extends JPanel {
                 // clean up
                 resultGatherer = null;
 
+                if (seen != null) {
+                    try {
+                        seen.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    seen = null;
+                }
+
+                if (exporter != null) {
+                    try {
+                        exporter.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    exporter = null;
+                }
+
+                if (journal != null) {
+                    try {
+                        journal.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    journal = null;
+                }
+
                 searchRunning = false;
                 updateTimers();
 
+                if (ranked != null) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            refreshRanked();
+                        }
+                    });
+                }
+
                 // one more stats
                 try {
                     SwingUtilities.invokeAndWait(new Runnable() {
@@ -352,6 +692,11 @@ public class ThumbnailBox extends JPanel {
                 }
 
                 System.out.println("FINALLY stopping search");
+                try {
+                    awaitAllPrepared();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
                 try {
                     search.close();
                 } catch (InterruptedException e) {
@@ -362,8 +707,13 @@ public class ThumbnailBox extends JPanel {
                 SwingUtilities.invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        startButton.setEnabled(true);
-                        stopButton.setEnabled(false);
+                        if (startButton != null) {
+                            startButton.setEnabled(true);
+                            stopButton.setEnabled(false);
+                        }
+                        orderBox.setEnabled(true);
+                        seenBox.setEnabled(true);
+                        firePropertyChange(SEARCH_FINISHED, false, true);
                     }
                 });
 
@@ -372,6 +722,20 @@ public class ThumbnailBox extends JPanel {
         }
     }
 
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops the timers of a pane no longer shown. The search must have
+     * ended.
+     */
+    public void dispose() {
+        statsTimer.stop();
+        rankTimer.stop();
+        sessionVarsTimer.cancel();
+    }
+
     public void stop() throws InterruptedException {
         running = false;
         search.close();
@@ -394,6 +758,12 @@ public class ThumbnailBox extends JPanel {
     }
 
     public void updateTimers() {
+        if (searchRunning && ranked != null) {
+            rankTimer.start();
+        } else {
+            rankTimer.stop();
+        }
+
         if (searchRunning) {
             statsTimer.start();
             if (updateSessionVars) {
@@ -413,12 +783,70 @@ public class ThumbnailBox extends JPanel {
         }
     }
 
-    public void start(Search s, SearchFactory f) {
+    public void start(ResultSource s) {
         search = s;
-        factory = f;
 
         running = true;
 
+        descriptors = new DescriptorStore(descriptorNames);
+        mergedSessionVariables = Collections
+                .unmodifiableMap(new HashMap<String, Double>(
+                        globalSessionVariables));
+
+        int capacity = RANKED_PAGES * pics.length;
+        switch (orderBox.getSelectedIndex()) {
+        case 1:
+            ranked = new TopKResults(capacity,
+                    TopKResults.Scoring.MAX_DEVIATION, descriptorNames);
+            break;
+        case 2:
+            ranked = new TopKResults(capacity,
+                    TopKResults.Scoring.SUM_DEVIATION, descriptorNames);
+            break;
+        default:
+            ranked = null;
+        }
+        rankedPage = 0;
+        Arrays.fill(shownRanked, null);
+        orderBox.setEnabled(false);
+
+        repeats.clear();
+        seen = null;
+        skipSeen = seenBox.getSelectedIndex() == 1;
+        if (seenBox.getSelectedIndex() != 0) {
+            try {
+                seen = SeenSet.open(new File(LocalStorage.getDirectory("seen"),
+                        scopeId));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        seenBox.setEnabled(false);
+
+        browsing = null;
+        previousButton.setEnabled(false);
+
+        journal = null;
+        if (recordJournal) {
+            try {
+                journal = ResultJournal.create(journalData);
+                if (searchConfiguration != null) {
+                    journal.writeSearches(searchConfiguration);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        exporter = null;
+        if (exportFile != null) {
+            try {
+                exporter = ResultExporter.open(exportFile, descriptorNames);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
         clearAll();
 
         stats.setIndeterminateMessage("Initializing Search");
@@ -434,6 +862,141 @@ public class ThumbnailBox extends JPanel {
         }).start();
     }
 
+    /**
+     * Re-ranks against the latest session variables and shows the current
+     * page, preparing only the viewers whose result changed. Called on the
+     * AWT thread, the work happens on a separate thread.
+     */
+    protected void refreshRanked() {
+        final TopKResults rk = ranked;
+        if (rk == null) {
+            return;
+        }
+        if (!rankRefreshing.compareAndSet(false, true)) {
+            // done when the running one ends, so a page change is not lost
+            rankDirty = true;
+            return;
+        }
+        rankDirty = false;
+
+        final Map<String, Double> sessionVariables = mergedSessionVariables;
+        final int page = rankedPage;
+
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    rk.rescore(sessionVariables);
+
+                    List<SearchResult> l = rk.getPage(page, pics.length);
+                    for (int i = 0; i < pics.length; i++) {
+                        final ResultViewer v = pics[i];
+                        SearchResult r = i < l.size() ? l.get(i) : null;
+                        if (r == shownRanked[i]) {
+                            continue;
+                        }
+                        shownRanked[i] = r;
+
+                        if (r != null) {
+                            prepareResult(i, r);
+                        } else {
+                            awaitPrepared(i);
+                            SwingUtilities.invokeAndWait(new Runnable() {
+                                public void run() {
+                                    v.setResult(null, null);
+                                    v.commitResult();
+                                }
+                            });
+                        }
+                    }
+
+                    awaitAllPrepared();
+                    setNextEnabledOnAWT(rk.size() > pics.length);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (InvocationTargetException e) {
+                    e.printStackTrace();
+                } finally {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            rankRefreshing.set(false);
+                            if (rankDirty) {
+                                refreshRanked();
+                            }
+                        }
+                    });
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * Shows a recorded session, page by page, without any servers. Must not
+     * be called while a search is running.
+     */
+    public void browse(JournalReader j) {
+        search = new JournalSource(j);
+        ranked = null;
+        browsingPage = 0;
+        browsing = j;
+        clearAll();
+        showBrowsingPage();
+    }
+
+    protected void showBrowsingPage() {
+        final JournalReader j = browsing;
+        if (j == null) {
+            return;
+        }
+
+        final int pages = Math.max(1, (j.size() + pics.length - 1)
+                / pics.length);
+        final int page = Math.max(0, Math.min(pages - 1, browsingPage));
+        browsingPage = page;
+
+        nextButton.setEnabled(false);
+        previousButton.setEnabled(false);
+        stats.setMessage(j.getDirectory().getName() + ": page " + (page + 1)
+                + " of " + pages);
+
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < pics.length; i++) {
+                        final ResultViewer v = pics[i];
+                        int seq = page * pics.length + i;
+                        if (seq < j.size()) {
+                            prepareResult(i, j.get(seq));
+                        } else {
+                            awaitPrepared(i);
+                            SwingUtilities.invokeAndWait(new Runnable() {
+                                public void run() {
+                                    v.setResult(null, null);
+                                    v.commitResult();
+                                }
+                            });
+                        }
+                    }
+                    awaitAllPrepared();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (InvocationTargetException e) {
+                    e.printStackTrace();
+                } finally {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            if (browsing == j) {
+                                previousButton.setEnabled(page > 0);
+                                nextButton.setEnabled(page < pages - 1);
+                            }
+                        }
+                    });
+                }
+            }
+        }).start();
+    }
+
     protected void setNextEnabledOnAWT(final boolean state) {
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
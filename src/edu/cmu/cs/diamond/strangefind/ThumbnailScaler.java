@@ -0,0 +1,189 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Scales images into pooled, cell-sized destination rasters. Large
+ * reductions are done progressively in halving steps through per-thread
+ * scratch buffers, which keeps quality close to an area average without
+ * allocating a new intermediate image each time.
+ */
+public class ThumbnailScaler {
+    // larger scratch buffers are not kept, as every preparation thread would
+    // hold on to two of them
+    private static final long MAX_KEPT_SCRATCH_PIXELS = 1024 * 1024;
+
+    final private int cellWidth;
+
+    final private int cellHeight;
+
+    final private int capacity;
+
+    final private Deque<BufferedImage> pool = new ArrayDeque<BufferedImage>();
+
+    // handed-out subimage -> pooled parent
+    final private Map<BufferedImage, BufferedImage> outstanding = new IdentityHashMap<BufferedImage, BufferedImage>();
+
+    final private ThreadLocal<BufferedImage[]> scratch = new ThreadLocal<BufferedImage[]>() {
+        @Override
+        protected BufferedImage[] initialValue() {
+            return new BufferedImage[2];
+        }
+    };
+
+    final private PipelineMetrics metrics = PipelineMetrics.getInstance();
+
+    public ThumbnailScaler(int cellWidth, int cellHeight, int capacity) {
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Scales src by scale into a pooled buffer. The returned image must be
+     * handed back with {@link #release(BufferedImage)} once it is no longer
+     * displayed.
+     */
+    public BufferedImage scale(BufferedImage src, double scale) {
+        int w = Math.max(1, Math.min(cellWidth,
+                (int) (src.getWidth() * scale)));
+        int h = Math.max(1, Math.min(cellHeight,
+                (int) (src.getHeight() * scale)));
+
+        BufferedImage cur = src;
+        int cw = src.getWidth();
+        int ch = src.getHeight();
+
+        // halve until within a factor of two of the target
+        int step = 0;
+        while (cw / 2 >= w && ch / 2 >= h) {
+            int nw = cw / 2;
+            int nh = ch / 2;
+            BufferedImage s = getScratch(step % 2, nw, nh);
+            draw(cur, cw, ch, s, nw, nh);
+
+            cur = s;
+            cw = nw;
+            ch = nh;
+            step++;
+        }
+
+        BufferedImage dst = acquire(w, h);
+        draw(cur, cw, ch, dst, w, h);
+        metrics.increment("thumbnail.scaled");
+
+        return dst;
+    }
+
+    public void release(BufferedImage img) {
+        synchronized (pool) {
+            BufferedImage parent = outstanding.remove(img);
+            if (parent != null && pool.size() < capacity) {
+                pool.push(parent);
+            }
+        }
+    }
+
+    private BufferedImage acquire(int w, int h) {
+        BufferedImage parent;
+        synchronized (pool) {
+            parent = pool.poll();
+        }
+
+        if (parent == null) {
+            parent = new BufferedImage(cellWidth, cellHeight,
+                    BufferedImage.TYPE_INT_RGB);
+            countAllocation("thumbnail.buffers", cellWidth, cellHeight);
+        } else {
+            metrics.increment("thumbnail.buffers.reused");
+        }
+
+        BufferedImage img = parent.getSubimage(0, 0, w, h);
+        synchronized (pool) {
+            outstanding.put(img, parent);
+        }
+        return img;
+    }
+
+    private BufferedImage getScratch(int which, int w, int h) {
+        BufferedImage buffers[] = scratch.get();
+        BufferedImage s = buffers[which];
+        if (s == null || s.getWidth() < w || s.getHeight() < h) {
+            // grow, keeping the old size if it was larger in one direction
+            int sw = Math.max(w, s == null ? 0 : s.getWidth());
+            int sh = Math.max(h, s == null ? 0 : s.getHeight());
+            if ((long) sw * sh > MAX_KEPT_SCRATCH_PIXELS) {
+                sw = w;
+                sh = h;
+            }
+            s = new BufferedImage(sw, sh, BufferedImage.TYPE_INT_RGB);
+            if ((long) sw * sh <= MAX_KEPT_SCRATCH_PIXELS) {
+                buffers[which] = s;
+            }
+            countAllocation("thumbnail.scratch", sw, sh);
+        }
+        return s;
+    }
+
+    private void countAllocation(String name, int w, int h) {
+        metrics.increment(name + ".allocated");
+        metrics.add(name + ".bytes", 4L * w * h);
+    }
+
+    private static void draw(BufferedImage src, int sw, int sh,
+            BufferedImage dst, int dw, int dh) {
+        Graphics2D g = dst.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(src, 0, 0, dw, dh, 0, 0, sw, sh, null);
+        g.dispose();
+    }
+}
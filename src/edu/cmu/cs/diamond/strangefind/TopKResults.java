@@ -0,0 +1,229 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The K most anomalous results seen so far, kept in a bounded min-heap so
+ * that memory does not grow with the size of the scope. Scores are computed
+ * from the rows of a DescriptorStore of the kept results; the results
+ * themselves are only held on to so that they can be shown.
+ */
+public class TopKResults {
+    public enum Scoring {
+        MAX_DEVIATION, SUM_DEVIATION
+    }
+
+    private static class Entry {
+        final SearchResult result;
+
+        // in rows
+        int row;
+
+        double score;
+
+        Entry(SearchResult result, int row) {
+            this.result = result;
+            this.row = row;
+        }
+    }
+
+    private static final Comparator<Entry> BY_SCORE = new Comparator<Entry>() {
+        public int compare(Entry o1, Entry o2) {
+            return Double.compare(o1.score, o2.score);
+        }
+    };
+
+    final private int capacity;
+
+    final private Scoring scoring;
+
+    final private String names[];
+
+    final private PriorityQueue<Entry> heap;
+
+    // descriptors of the kept results, and of ones evicted since the last
+    // compaction
+    private DescriptorStore rows;
+
+    // statistics of the last rescore, which offers are scored against too
+    final private double mean[];
+
+    final private double stddev[];
+
+    final private boolean known[];
+
+    public TopKResults(int capacity, Scoring scoring, String descriptorNames[]) {
+        this.capacity = capacity;
+        this.scoring = scoring;
+        names = descriptorNames.clone();
+        heap = new PriorityQueue<Entry>(capacity + 1, BY_SCORE);
+        rows = createStore();
+        mean = new double[names.length];
+        stddev = new double[names.length];
+        known = new boolean[names.length];
+    }
+
+    private DescriptorStore createStore() {
+        return new DescriptorStore(names, 2 * capacity);
+    }
+
+    /**
+     * Considers the result r, whose descriptors are in row of store, for
+     * the top K. It is scored like the kept results were by the last
+     * rescore. Returns true if it was kept.
+     */
+    public synchronized boolean offer(SearchResult r, DescriptorStore store,
+            int row) {
+        double score = score(store, row, new double[names.length]);
+
+        if (heap.size() == capacity) {
+            if (score <= heap.peek().score) {
+                return false;
+            }
+            heap.poll();
+        }
+
+        if (rows.size() == 2 * capacity) {
+            compact();
+        }
+        Entry e = new Entry(r, rows.append(store, row));
+        e.score = score;
+        heap.add(e);
+        return true;
+    }
+
+    // copies the rows still kept to a new store, before the old one starts
+    // dropping rows
+    private void compact() {
+        DescriptorStore kept = createStore();
+        for (Entry e : heap) {
+            e.row = kept.append(rows, e.row);
+        }
+        rows = kept;
+    }
+
+    /**
+     * Scores everything again against the current global statistics, taken
+     * from the anomaly filter's session variables. Descriptors without
+     * statistics keep the deviation they arrived with.
+     */
+    public synchronized void rescore(Map<String, Double> sessionVariables) {
+        Arrays.fill(known, false);
+        for (int i = 0; i < names.length; i++) {
+            Double count = sessionVariables.get(names[i] + "_count");
+            Double sum = sessionVariables.get(names[i] + "_sum");
+            Double sumSq = sessionVariables.get(names[i]
+                    + "_sum_of_squares");
+            if (count == null || sum == null || sumSq == null || count <= 0) {
+                continue;
+            }
+
+            // same as fil_anomaly
+            mean[i] = sum / count;
+            stddev[i] = Math.sqrt((sumSq - mean[i] * sum) / count);
+            known[i] = true;
+        }
+
+        List<Entry> entries = new ArrayList<Entry>(heap);
+        double d[] = new double[names.length];
+        for (Entry e : entries) {
+            e.score = score(rows, e.row, d);
+        }
+
+        heap.clear();
+        heap.addAll(entries);
+    }
+
+    /**
+     * Returns one page of results, most anomalous first.
+     */
+    public synchronized List<SearchResult> getPage(int page, int pageSize) {
+        List<Entry> entries = new ArrayList<Entry>(heap);
+        Collections.sort(entries, Collections.reverseOrder(BY_SCORE));
+
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        int end = Math.min(entries.size(), (page + 1) * pageSize);
+        for (int i = page * pageSize; i < end; i++) {
+            results.add(entries.get(i).result);
+        }
+        return results;
+    }
+
+    public synchronized int size() {
+        return heap.size();
+    }
+
+    // d is scratch space
+    private double score(DescriptorStore store, int row, double d[]) {
+        for (int i = 0; i < names.length; i++) {
+            d[i] = known[i] ? (store.getValue(row, i) - mean[i]) / stddev[i]
+                    : store.getDeviation(row, i);
+        }
+        return score(d);
+    }
+
+    private double score(double deviations[]) {
+        double score = 0;
+        for (double d : deviations) {
+            double v = Math.abs(d);
+            if (Double.isNaN(v) || Double.isInfinite(v)) {
+                continue;
+            }
+            switch (scoring) {
+            case MAX_DEVIATION:
+                score = Math.max(score, v);
+                break;
+            case SUM_DEVIATION:
+                score += v;
+                break;
+            }
+        }
+        return score;
+    }
+}
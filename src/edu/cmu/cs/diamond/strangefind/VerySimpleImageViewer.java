@@ -42,8 +42,10 @@ package edu.cmu.cs.diamond.strangefind;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GridLayout;
+import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseWheelEvent;
@@ -79,7 +81,7 @@ public class VerySimpleImageViewer extends JFrame {
             list.addListSelectionListener(new ListSelectionListener() {
                 public void valueChanged(ListSelectionEvent e) {
                     if (e.getFirstIndex() != -1) {
-                        setImage(result, imgs[list.getSelectedIndex()]);
+                        setImage(imgs[list.getSelectedIndex()]);
                     }
                 }
             });
@@ -87,14 +89,46 @@ public class VerySimpleImageViewer extends JFrame {
         }
     }
 
+    // draws the decoration overlay on top of the current channel
+    private class OverlayImageView extends JXImageView {
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+
+            Image img = getImage();
+            if (overlay == null || img == null) {
+                return;
+            }
+
+            // same placement as JXImageView uses for the image
+            Point2D center = getImageLocation();
+            if (center == null) {
+                center = new Point2D.Double(getWidth() / 2, getHeight() / 2);
+            }
+            double width = img.getWidth(null) * getScale();
+            double height = img.getHeight(null) * getScale();
+
+            g.drawImage(overlay, (int) (center.getX() - width / 2),
+                    (int) (center.getY() - height / 2), (int) width,
+                    (int) height, null);
+        }
+    }
+
     final private BufferedImage[] imgs;
 
     final private JXImageView image;
 
+    // decorations, rendered once for all channels
+    final private BufferedImage overlay;
+
     final private AnnotatedResult result;
 
-    public VerySimpleImageViewer(AnnotatedResult result, BufferedImage imgs[]) {
+    final private String verboseAnnotation;
+
+    public VerySimpleImageViewer(AnnotatedResult result, BufferedImage imgs[],
+            String verboseAnnotation) {
         this.result = result;
+        this.verboseAnnotation = verboseAnnotation;
 
         if (imgs.length > 0) {
             this.imgs = new BufferedImage[imgs.length];
@@ -105,10 +139,12 @@ public class VerySimpleImageViewer extends JFrame {
                     BufferedImage.TYPE_INT_RGB);
         }
 
-        image = new JXImageView();
+        overlay = createOverlay(result, this.imgs[0]);
+
+        image = new OverlayImageView();
         JTextArea verboseTextArea = new JTextArea();
         verboseTextArea.setEditable(false);
-        verboseTextArea.setText(result.getVerboseAnnotation());
+        verboseTextArea.setText(verboseAnnotation);
         JScrollPane jsp = new JScrollPane(verboseTextArea);
 
         JSplitPane splitpane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, true,
@@ -152,7 +188,7 @@ public class VerySimpleImageViewer extends JFrame {
         actionMap.setParent(oldActionMap.getParent());
         oldActionMap.setParent(actionMap);
 
-        setImage(result, this.imgs[0]);
+        setImage(this.imgs[0]);
 
         image.setPreferredSize(new Dimension(this.imgs[0].getWidth(),
                 this.imgs[0].getHeight()));
@@ -197,7 +233,7 @@ public class VerySimpleImageViewer extends JFrame {
                         writer.println();
                         writer.println("-----");
                         writer.println();
-                        writer.println(result.getVerboseAnnotation());
+                        writer.println(verboseAnnotation);
                         writer.close();
                     } catch (FileNotFoundException e1) {
                         e1.printStackTrace();
@@ -217,18 +253,28 @@ public class VerySimpleImageViewer extends JFrame {
         return button;
     }
 
-    private void setImage(AnnotatedResult result, BufferedImage img) {
-        BufferedImage newImage = new BufferedImage(img.getWidth(), img
-                .getHeight(), img.getType());
-        Graphics2D g = newImage.createGraphics();
-        g.drawImage(img, 0, 0, null);
+    private static BufferedImage createOverlay(AnnotatedResult result,
+            BufferedImage img) {
+        if (!result.hasDecorator()) {
+            return null;
+        }
+
+        BufferedImage overlay = new BufferedImage(img.getWidth(), img
+                .getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = overlay.createGraphics();
         result.decorate(g, 1.0);
         g.dispose();
 
+        return overlay;
+    }
+
+    private void setImage(BufferedImage img) {
         Point2D p = image.getImageLocation();
         double scale = image.getScale();
 
-        image.setImage(newImage);
+        // the channel images are shown as they are, the overlay is
+        // composited when painting
+        image.setImage(img);
 
         image.setImageLocation(p);
         image.setScale(scale);
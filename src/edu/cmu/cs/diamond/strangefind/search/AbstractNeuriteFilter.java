@@ -47,9 +47,10 @@ import java.util.*;
 import javax.swing.*;
 
 import edu.cmu.cs.diamond.opendiamond.*;
+import edu.cmu.cs.diamond.strangefind.AnomalyDescriptorView;
 import edu.cmu.cs.diamond.strangefind.Annotator;
 import edu.cmu.cs.diamond.strangefind.Decorator;
-import edu.cmu.cs.diamond.strangefind.LogicEngine;
+import edu.cmu.cs.diamond.strangefind.SearchResult;
 import edu.cmu.cs.diamond.strangefind.StrangeFindSearch;
 
 public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
@@ -74,6 +75,7 @@ public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
     }
 
     public Annotator getAnnotator() {
+        final int indices[] = descriptorIndices.clone();
         final List<String> selectedLabels = new ArrayList<String>();
         final List<String> niceSelectedLabels = new ArrayList<String>();
         for (int i = 0; i < checkboxes.length; i++) {
@@ -85,7 +87,7 @@ public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
         }
 
         return new Annotator() {
-            public String annotate(Result r) {
+            public String annotate(SearchResult r) {
 
                 boolean useHTML = true;
 
@@ -96,12 +98,13 @@ public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
                     sb.append("<html>");
                 }
 
+                AnomalyDescriptorView d = AnomalyDescriptorView.get(r, indices);
                 String server = r.getServerName();
                 String name = getName(r);
-                int samples = getSamples(r, 0);
+                int samples = d.getCount(0);
 
                 for (int i = 0; i < LABELS.length; i++) {
-                    boolean isA = getIsAnomalous(r, i);
+                    boolean isA = d.isAnomalous(i);
 
                     if (useHTML) {
                         sb.append("<p>");
@@ -116,10 +119,9 @@ public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
                     }
 
                     String descriptor = NICE_LABELS[i];
-                    double stddev = getStddev(r, i);
-                    double value = getValue(r, i);
-                    double mean = getMean(r, i);
-                    double stddevDiff = getStddevDiff(stddev, value, mean);
+                    double value = d.getValue(i);
+                    double mean = d.getMean(i);
+                    double stddevDiff = d.getDeviation(i);
                     String aboveOrBelow = getAboveOrBelow(stddevDiff, "+", "−");
 
                     sb.append(descriptor);
@@ -144,41 +146,7 @@ public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
                 return sb.toString();
             }
 
-            private double getValue(Result r, int descriptor) {
-                double value = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-value-" + descriptor
-                                + ".double"));
-                return value;
-            }
-
-            private double getStddevDiff(double stddev, double value,
-                    double mean) {
-                double stddevDiff = (value - mean) / stddev;
-                return stddevDiff;
-            }
-
-            private double getMean(Result r, int descriptor) {
-                double mean = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-mean-" + descriptor
-                                + ".double"));
-                return mean;
-            }
-
-            private double getStddev(Result r, int descriptor) {
-                double stddev = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-stddev-" + descriptor
-                                + ".double"));
-                return stddev;
-            }
-
-            private boolean getIsAnomalous(Result r, int descriptor) {
-                int isAnomalous = Util.extractInt(r
-                        .getValue("anomaly-descriptor-is_anomalous-"
-                                + descriptor + ".int"));
-                return isAnomalous == 1 ? true : false;
-            }
-
-            private String getName(Result r) {
+            private String getName(SearchResult r) {
                 String name = r.getName();
                 name = name.substring(name.lastIndexOf('/') + 1);
                 return name;
@@ -191,29 +159,22 @@ public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
                 return aboveOrBelow;
             }
 
-            private int getSamples(Result r, int descriptor) {
-                int samples = Util.extractInt(r
-                        .getValue("anomaly-descriptor-count-" + descriptor
-                                + ".int"));
-                return samples;
-            }
-
-            public String annotateTooltip(Result r) {
+            public String annotateTooltip(SearchResult r) {
                 return annotate(r);
             }
 
             @Override
-            public String annotateOneLine(Result r) {
+            public String annotateOneLine(SearchResult r) {
                 return null;
             }
 
             @Override
-            public String annotateVerbose(Result r) {
+            public String annotateVerbose(SearchResult r) {
                 return null;
             }
 
             @Override
-            public String annotateNonHTML(Result r) {
+            public String annotateNonHTML(SearchResult r) {
                 return "TODO: not implemented";
             }
         };
@@ -232,86 +193,74 @@ public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
         return null;
     }
 
-    public Filter[] getFilters() {
-        Filter neurites = null;
-        Filter anom = null;
+    public FilterStage[] getFilters() {
+        FilterStage neurites = null;
         try {
             FilterCode c;
 
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_imagej_exec"));
+            c = FilterCache.getFilterCode("fil_imagej_exec");
 
             byte macroBytes[] = encodeResources(new String[] {
                     macroName, "Multi_Thresholder.jar" });
-            neurites = new Filter("neurites", c, 0,
+            neurites = new FilterStage("neurites", c, 0,
                     Arrays.asList(new String[0]),
                     Arrays.asList(new String[] { macroName }), macroBytes);
             System.out.println(neurites);
 
-            List<String> paramsList = new ArrayList<String>();
-            for (int i = 0; i < checkboxes.length; i++) {
-                paramsList.add(LABELS[i]);
-                paramsList.add(stddevs[i].getValue().toString());
-            }
-
-            StringBuilder logicalExpression = new StringBuilder();
-            boolean anySelected = false;
-            boolean exactlyOneSelected = false;
-            String lastSelected = null;
-            logicalExpression.append("OR(");
-            for (int i = 0; i < checkboxes.length; i++) {
-                if (checkboxes[i].isSelected()) {
-                    if (anySelected) {
-                        exactlyOneSelected = false;
-                        logicalExpression.append(",");
-                    } else {
-                        exactlyOneSelected = true;
-                    }
-                    lastSelected = "$" + (i + 1);
-                    logicalExpression.append(lastSelected);
-                    anySelected = true;
-                }
-            }
-            logicalExpression.append(")");
-
-            if (!anySelected) {
-                logicalExpression = new StringBuilder(); // clear
-            } else if (exactlyOneSelected) {
-                logicalExpression = new StringBuilder(lastSelected);
-            }
-
-            String anomArgs[] = new String[paramsList.size() + 3];
-            anomArgs[0] = ignoreSpinner.getValue().toString(); // skip
-            anomArgs[1] = UUID.randomUUID().toString(); // random value
-            anomArgs[2] = LogicEngine
-                    .getMachineCodeForExpression(logicalExpression.toString());
-            System.arraycopy(paramsList.toArray(), 0, anomArgs, 3, paramsList
-                    .size());
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_anomaly"));
-            anom = new Filter("anomaly", c, 1,
-                    Arrays.asList(new String[] { "neurites" }),
-                    Arrays.asList(anomArgs));
-            System.out.println(anom);
-
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        return new Filter[] { neurites, anom };
+        return new FilterStage[] { neurites };
     }
 
-    private byte[] encodeResources(String[] resources) throws IOException {
-        Map<String, byte[]> zipMap = new HashMap<String, byte[]>();
-        for (String r : resources) {
-            InputStream in = this.getClass().getResourceAsStream(
-                    "resources/" + r);
-            byte bb[] = Util.readFully(in);
-            zipMap.put(r, bb);
+    public AnomalyStage getAnomalyStage() {
+        String stddevList[] = new String[LABELS.length];
+        for (int i = 0; i < stddevList.length; i++) {
+            stddevList[i] = stddevs[i].getValue().toString();
         }
-        return Util.encodeZipFile(zipMap);
+
+        StringBuilder logicalExpression = new StringBuilder();
+        boolean anySelected = false;
+        boolean exactlyOneSelected = false;
+        String lastSelected = null;
+        logicalExpression.append("OR(");
+        for (int i = 0; i < checkboxes.length; i++) {
+            if (checkboxes[i].isSelected()) {
+                if (anySelected) {
+                    exactlyOneSelected = false;
+                    logicalExpression.append(",");
+                } else {
+                    exactlyOneSelected = true;
+                }
+                lastSelected = "$" + (i + 1);
+                logicalExpression.append(lastSelected);
+                anySelected = true;
+            }
+        }
+        logicalExpression.append(")");
+
+        if (!anySelected) {
+            logicalExpression = new StringBuilder(); // clear
+        } else if (exactlyOneSelected) {
+            logicalExpression = new StringBuilder(lastSelected);
+        }
+
+        return new AnomalyStage(Arrays.asList(new String[] { "neurites" }),
+                (Integer) ignoreSpinner.getValue(), getDescriptorNames(),
+                stddevList, logicalExpression.toString());
+    }
+
+    private byte[] encodeResources(String[] resources) throws IOException {
+        return FilterArguments.encodeResources(getClass(), resources);
     }
 
+    // where the descriptors are when run with other searches
+    private int descriptorIndices[] = AnomalyStage
+            .getOwnIndices(LABELS.length);
+
     final private JCheckBox[] checkboxes = new JCheckBox[LABELS.length];
 
     final private JSpinner[] stddevs = new JSpinner[LABELS.length];
@@ -355,6 +304,36 @@ public abstract class AbstractNeuriteFilter implements StrangeFindSearch {
 
     @Override
     public Set<String> getPushAttributes() {
-        return null;
+        // There is no thumb stage to push a thumbnail from, so the viewer
+        // makes one from the body. It is pushed with the result rather
+        // than fetched again; only the ImageJ intermediates are left out.
+        Set<String> set = new HashSet<String>();
+        set.add("");
+        AnomalyDescriptorView.addKeys(set, descriptorIndices);
+        set.add("Device-Name");
+        set.add("Display-Name");
+        return set;
+    }
+
+    @Override
+    public String[] getDescriptorNames() {
+        return LABELS.clone();
+    }
+
+    @Override
+    public void setDescriptorIndices(int indices[]) {
+        descriptorIndices = indices.clone();
+    }
+
+    @Override
+    public void setConfiguration(Properties p) {
+        SearchSettings.apply(p, ignoreSpinner, LABELS, checkboxes, stddevs);
+    }
+
+    @Override
+    public Properties getConfiguration() {
+        Properties p = new Properties();
+        SearchSettings.store(p, ignoreSpinner, LABELS, checkboxes, stddevs);
+        return p;
     }
 }
@@ -0,0 +1,263 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.cmu.cs.diamond.opendiamond.Filter;
+import edu.cmu.cs.diamond.strangefind.LogicEngine;
+
+/**
+ * The anomaly detection stage of a search: which descriptors to watch, how
+ * many standard deviations away counts as anomalous, how many objects to see
+ * before deciding, and the logic expression over the descriptors ($1 being
+ * the first) that makes the verdict. The fil_anomaly arguments, with a fresh
+ * nonce, are made when the filter is created.
+ */
+public class AnomalyStage {
+    public static final String NAME = "anomaly";
+
+    private static final Pattern LITERAL = Pattern.compile("\\$\\s*(\\d+)");
+
+    final private List<String> dependencies;
+
+    final private int skip;
+
+    final private String labels[];
+
+    final private String stddevs[];
+
+    final private String expression;
+
+    public AnomalyStage(List<String> dependencies, int skip, String labels[],
+            String stddevs[], String expression) {
+        if (labels.length != stddevs.length) {
+            throw new IllegalArgumentException(
+                    "one standard deviation is needed per descriptor");
+        }
+
+        this.dependencies = Collections
+                .unmodifiableList(new ArrayList<String>(dependencies));
+        this.skip = skip;
+        this.labels = labels.clone();
+        this.stddevs = stddevs.clone();
+        this.expression = expression;
+    }
+
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    public String[] getDescriptorNames() {
+        return labels.clone();
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns a copy of this stage reading from other stages.
+     */
+    public AnomalyStage rename(List<String> dependencies) {
+        return new AnomalyStage(dependencies, skip, labels, stddevs,
+                expression);
+    }
+
+    public Filter createFilter() throws IOException {
+        String anomArgs[] = new String[labels.length * 2 + 3];
+        anomArgs[0] = Integer.toString(skip); // skip
+        anomArgs[1] = FilterArguments.getAnomalyNonce(); // random value
+        anomArgs[2] = LogicEngine.getMachineCodeForExpression(expression);
+        for (int i = 0; i < labels.length; i++) {
+            anomArgs[3 + 2 * i] = labels[i];
+            anomArgs[4 + 2 * i] = stddevs[i];
+        }
+
+        return new Filter(NAME, FilterCache.getFilterCode("fil_anomaly"), 1,
+                dependencies, Arrays.asList(anomArgs));
+    }
+
+    /**
+     * Returns where each of names is among the descriptors of this stage,
+     * -1 for those it does not have.
+     */
+    public int[] getIndices(String names[]) {
+        List<String> l = Arrays.asList(labels);
+        int indices[] = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            indices[i] = l.indexOf(names[i]);
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the indices of n descriptors numbered as in their own stage.
+     */
+    public static int[] getOwnIndices(int n) {
+        int indices[] = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * Combines the anomaly stages of several searches into one, which passes
+     * an object if any of them would. Descriptors keep the order of the
+     * stages, so those of the first stage keep their numbers; the others
+     * find theirs with getIndices. A descriptor watched by more than one
+     * stage is watched once, since fil_anomaly keeps its statistics by
+     * descriptor name, at the distance of the stages whose expressions use
+     * it. If those ask for different distances the stages cannot be
+     * combined without changing what one of them finds, and an
+     * IllegalArgumentException is thrown, as it is for an expression that
+     * names a descriptor its stage does not have. The priming count is the
+     * largest asked for.
+     */
+    public static AnomalyStage combine(List<AnomalyStage> stages) {
+        if (stages.size() == 1) {
+            return stages.get(0);
+        }
+
+        LinkedHashSet<String> deps = new LinkedHashSet<String>();
+        Map<String, String> merged = new LinkedHashMap<String, String>();
+        Map<String, String> used = new HashMap<String, String>();
+        int skip = 0;
+        for (AnomalyStage s : stages) {
+            deps.addAll(s.dependencies);
+            skip = Math.max(skip, s.skip);
+            Set<String> uses = s.getUsedDescriptors();
+            for (int i = 0; i < s.labels.length; i++) {
+                String label = s.labels[i];
+                if (!merged.containsKey(label)) {
+                    merged.put(label, s.stddevs[i]);
+                }
+                if (!uses.contains(label)) {
+                    continue;
+                }
+
+                String old = used.get(label);
+                if (old == null) {
+                    used.put(label, s.stddevs[i]);
+                    merged.put(label, s.stddevs[i]);
+                } else if (Double.parseDouble(old) != Double
+                        .parseDouble(s.stddevs[i])) {
+                    throw new IllegalArgumentException("Searches run together "
+                            + "use " + label + " at " + old + " and "
+                            + s.stddevs[i] + " standard deviations");
+                }
+            }
+        }
+
+        List<String> labels = new ArrayList<String>(merged.keySet());
+        List<String> terms = new ArrayList<String>();
+        for (AnomalyStage s : stages) {
+            if (s.expression.trim().length() > 0) {
+                terms.add(renumber(s, labels));
+            }
+        }
+
+        String expression;
+        if (terms.isEmpty()) {
+            expression = "";
+        } else if (terms.size() == 1) {
+            expression = terms.get(0);
+        } else {
+            StringBuilder sb = new StringBuilder("OR(");
+            for (int i = 0; i < terms.size(); i++) {
+                if (i > 0) {
+                    sb.append(",");
+                }
+                sb.append(terms.get(i));
+            }
+            sb.append(")");
+            expression = sb.toString();
+        }
+
+        return new AnomalyStage(new ArrayList<String>(deps), skip, labels
+                .toArray(new String[0]), merged.values()
+                .toArray(new String[0]), expression);
+    }
+
+    // the descriptors the expression refers to
+    private Set<String> getUsedDescriptors() {
+        Set<String> result = new HashSet<String>();
+        Matcher m = LITERAL.matcher(expression);
+        while (m.find()) {
+            int n = Integer.parseInt(m.group(1));
+            if (n >= 1 && n <= labels.length) {
+                result.add(labels[n - 1]);
+            }
+        }
+        return result;
+    }
+
+    // rewrites $n in the expression of s to the number of the same
+    // descriptor in labels
+    private static String renumber(AnomalyStage s, List<String> labels) {
+        Matcher m = LITERAL.matcher(s.expression);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            int n = Integer.parseInt(m.group(1));
+            if (n < 1 || n > s.labels.length) {
+                throw new IllegalArgumentException("no descriptor $" + n
+                        + " in " + s.expression);
+            }
+            int renumbered = labels.indexOf(s.labels[n - 1]) + 1;
+            m.appendReplacement(sb, "\\$" + renumbered);
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+}
@@ -43,11 +43,9 @@ package edu.cmu.cs.diamond.strangefind.search;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
-import java.io.FileInputStream;
+import java.awt.geom.Path2D;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.List;
@@ -108,19 +106,18 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
         checkboxes[6].setSelected(true);
     }
 
-    public Filter[] getFilters() {
-        Filter rgb = null;
-        Filter thumb = null;
-        Filter circles = null;
-        Filter anom = null;
+    public FilterStage[] getFilters() {
+        FilterStage rgb = null;
+        FilterStage thumb = null;
+        FilterStage circles = null;
         try {
             FilterCode c;
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_rgb"));
-            rgb = new Filter("rgb", c, 1, Arrays.asList(new String[0]),
+            c = FilterCache.getFilterCode("fil_rgb");
+            rgb = new FilterStage("rgb", c, 1, Arrays.asList(new String[0]),
                     Arrays.asList(new String[0]));
 
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_thumb"));
-            thumb = new Filter("thumb", c, 1,
+            c = FilterCache.getFilterCode("fil_thumb");
+            thumb = new FilterStage("thumb", c, 1,
                     Arrays.asList(new String[] { "rgb" }),
                     Arrays.asList(new String[] {
                                     Integer.toString(ResultViewer
@@ -128,66 +125,62 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
                                     Integer.toString(ResultViewer
                                             .getPreferredHeight()) }));
 
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_circle"));
-            circles = new Filter("circles", c, 0,
+            c = FilterCache.getFilterCode("fil_circle");
+            circles = new FilterStage("circles", c, 0,
                     Arrays.asList(new String[] { "rgb" }),
                     Arrays.asList(new String[] { "-1", "-1", "0.4", "1" }));
             System.out.println(circles);
 
-            List<String> paramsList = new ArrayList<String>();
-            for (int i = 0; i < checkboxes.length; i++) {
-                paramsList.add(LABELS[i]);
-                paramsList.add(stddevs[i].getValue().toString());
-            }
-
-            StringBuilder logicalExpression = new StringBuilder();
-            boolean anySelected = false;
-            boolean exactlyOneSelected = false;
-            String lastSelected = null;
-            logicalExpression.append("OR(");
-            for (int i = 0; i < checkboxes.length; i++) {
-                if (checkboxes[i].isSelected()) {
-                    if (anySelected) {
-                        exactlyOneSelected = false;
-                        logicalExpression.append(",");
-                    } else {
-                        exactlyOneSelected = true;
-                    }
-                    lastSelected = "$" + (i + 1);
-                    logicalExpression.append(lastSelected);
-                    anySelected = true;
-                }
-            }
-            logicalExpression.append(")");
-
-            if (!anySelected) {
-                logicalExpression = new StringBuilder(); // clear
-            } else if (exactlyOneSelected) {
-                logicalExpression = new StringBuilder(lastSelected);
-            }
-
-            String anomArgs[] = new String[paramsList.size() + 3];
-            anomArgs[0] = ignoreSpinner.getValue().toString(); // skip
-            anomArgs[1] = UUID.randomUUID().toString(); // random value
-            anomArgs[2] = LogicEngine
-                    .getMachineCodeForExpression(logicalExpression.toString());
-            System.arraycopy(paramsList.toArray(), 0, anomArgs, 3, paramsList
-                    .size());
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_anomaly"));
-            anom = new Filter("anomaly", c, 1,
-                    Arrays.asList(new String[] { "circles" }),
-                    Arrays.asList(anomArgs));
-            System.out.println(anom);
-
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        return new Filter[] { rgb, thumb, circles, anom };
+        return new FilterStage[] { rgb, thumb, circles };
     }
 
+    public AnomalyStage getAnomalyStage() {
+        String stddevList[] = new String[LABELS.length];
+        for (int i = 0; i < stddevList.length; i++) {
+            stddevList[i] = stddevs[i].getValue().toString();
+        }
+
+        StringBuilder logicalExpression = new StringBuilder();
+        boolean anySelected = false;
+        boolean exactlyOneSelected = false;
+        String lastSelected = null;
+        logicalExpression.append("OR(");
+        for (int i = 0; i < checkboxes.length; i++) {
+            if (checkboxes[i].isSelected()) {
+                if (anySelected) {
+                    exactlyOneSelected = false;
+                    logicalExpression.append(",");
+                } else {
+                    exactlyOneSelected = true;
+                }
+                lastSelected = "$" + (i + 1);
+                logicalExpression.append(lastSelected);
+                anySelected = true;
+            }
+        }
+        logicalExpression.append(")");
+
+        if (!anySelected) {
+            logicalExpression = new StringBuilder(); // clear
+        } else if (exactlyOneSelected) {
+            logicalExpression = new StringBuilder(lastSelected);
+        }
+
+        return new AnomalyStage(Arrays.asList(new String[] { "circles" }),
+                (Integer) ignoreSpinner.getValue(), getDescriptorNames(),
+                stddevList, logicalExpression.toString());
+    }
+
+    // where the descriptors are when run with other searches
+    private int descriptorIndices[] = AnomalyStage
+            .getOwnIndices(LABELS.length);
+
     final private JCheckBox[] checkboxes = new JCheckBox[LABELS.length];
 
     final private JSpinner[] stddevs = new JSpinner[LABELS.length];
@@ -220,24 +213,109 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
         return result;
     }
 
+    private static final Arc2D UNIT_CIRCLE = new Arc2D.Double(-1, -1, 2, 2,
+            0, 360, Arc2D.CHORD);
+
+    private static final Stroke DASHED_STROKE = new BasicStroke(1.0f,
+            BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 1f,
+            new float[] { 5.0f }, 0);
+
+    private static final Stroke SOLID_STROKE = new BasicStroke(2.0f);
+
+    private static final Stroke HAIRLINE_STROKE = new BasicStroke(1.0f);
+
+    private static final Color SOLID_FILL = new Color(1.0f, 0.0f, 0.0f, 0.2f);
+
+    // all circles of one result at one scale, one shape per fill style
+    private static class CircleShapes {
+        final Path2D solid = new Path2D.Float();
+
+        final Path2D dashed = new Path2D.Float();
+    }
+
+    // a thumbnail and the full view, say
+    private static final int SCALES_KEPT = 2;
+
+    private static class CircleCache {
+        final CircleData circles;
+
+        final Map<Double, CircleShapes> shapes = new LinkedHashMap<Double, CircleShapes>(
+                4, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Double, CircleShapes> eldest) {
+                return size() > SCALES_KEPT;
+            }
+        };
+
+        CircleCache(CircleData circles) {
+            this.circles = circles;
+        }
+
+        synchronized CircleShapes getShapes(double scale) {
+            CircleShapes s = shapes.get(scale);
+            if (s == null) {
+                s = buildShapes(circles, scale);
+                shapes.put(scale, s);
+            }
+            return s;
+        }
+    }
+
     public Decorator getDecorator() {
         return new Decorator() {
+            final private Map<AnnotatedResult, CircleCache> cache = Collections
+                    .synchronizedMap(new WeakHashMap<AnnotatedResult, CircleCache>());
+
             public void decorate(AnnotatedResult r, Graphics2D g, double scale) {
-                byte data[] = r.getValue("circle-data");
-                if (data == null) {
-                    return;
+                CircleCache c = cache.get(r);
+                if (c == null) {
+                    byte data[] = r.getValue("circle-data");
+                    if (data == null) {
+                        return;
+                    }
+                    c = new CircleCache(CircleData.decode(data));
+                    cache.put(r, c);
                 }
 
-                List<Circle> circles = extractCircles(data);
-                for (Circle circle : circles) {
-                    drawCircle(g, circle, scale,
-                            circle.inResult ? CircleFill.CIRCLE_FILL_SOLID
-                                    : CircleFill.CIRCLE_FILL_DASHED);
-                }
+                CircleShapes s = c.getShapes(scale);
+
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                        RenderingHints.VALUE_ANTIALIAS_ON);
+
+                g.setPaint(SOLID_FILL);
+                g.fill(s.solid);
+                g.setStroke(SOLID_STROKE);
+                g.setPaint(Color.RED);
+                g.draw(s.solid);
+
+                g.setStroke(DASHED_STROKE);
+                g.draw(s.dashed);
             }
         };
     }
 
+    static private CircleShapes buildShapes(CircleData circles, double scale) {
+        CircleShapes s = new CircleShapes();
+        AffineTransform at = new AffineTransform();
+
+        for (int i = 0; i < circles.size(); i++) {
+            float x = circles.getX(i);
+            float y = circles.getY(i);
+            float a = circles.getA(i);
+            float b = circles.getB(i);
+
+            at.setToScale(scale, scale);
+            at.translate(x, y);
+            at.rotate(circles.getT(i));
+            at.scale(a, b);
+
+            Path2D p = circles.isInResult(i) ? s.solid : s.dashed;
+            p.append(UNIT_CIRCLE.getPathIterator(at), false);
+        }
+        return s;
+    }
+
     protected void drawCircle(Graphics2D g, Circle circle, double scale,
             CircleFill fill) {
         float x = circle.x;
@@ -250,8 +328,6 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
                 RenderingHints.VALUE_ANTIALIAS_ON);
 
         // draw
-        Arc2D arc = new Arc2D.Double(-1, -1, 2, 2, 0, 360, Arc2D.CHORD);
-
         AffineTransform at = new AffineTransform();
         at.scale(scale, scale);
 
@@ -259,25 +335,24 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
         at.rotate(t);
         at.scale(a, b);
 
-        Shape s = at.createTransformedShape(arc);
+        Shape s = at.createTransformedShape(UNIT_CIRCLE);
         switch (fill) {
         case CIRCLE_FILL_DASHED:
-            g.setStroke(new BasicStroke(1.0f, BasicStroke.CAP_BUTT,
-                    BasicStroke.JOIN_BEVEL, 1f, new float[] { 5.0f }, 0));
+            g.setStroke(DASHED_STROKE);
             g.setPaint(Color.RED);
             g.draw(s);
             break;
 
         case CIRCLE_FILL_SOLID:
-            g.setStroke(new BasicStroke(2.0f));
-            g.setPaint(new Color(1.0f, 0.0f, 0.0f, 0.2f));
+            g.setStroke(SOLID_STROKE);
+            g.setPaint(SOLID_FILL);
             g.fill(s);
             g.setPaint(Color.RED);
             g.draw(s);
             break;
 
         case CIRCLE_FILL_HAIRLINE:
-            g.setStroke(new BasicStroke(1.0f));
+            g.setStroke(HAIRLINE_STROKE);
             g.setPaint(Color.RED);
             g.draw(s);
             break;
@@ -285,6 +360,7 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
     }
 
     public Annotator getAnnotator() {
+        final int indices[] = descriptorIndices.clone();
         final List<String> selectedLabels = new ArrayList<String>();
         final List<String> niceSelectedLabels = new ArrayList<String>();
         for (int i = 0; i < checkboxes.length; i++) {
@@ -296,7 +372,7 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
         }
 
         return new Annotator() {
-            public String annotate(Result r) {
+            public String annotate(SearchResult r) {
 
                 boolean useHTML = true;
 
@@ -307,12 +383,13 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
                     sb.append("<html>");
                 }
 
+                AnomalyDescriptorView d = AnomalyDescriptorView.get(r, indices);
                 String server = r.getServerName();
                 String name = getName(r);
-                int samples = getSamples(r, 0);
+                int samples = d.getCount(0);
 
                 for (int i = 0; i < LABELS.length; i++) {
-                    boolean isA = getIsAnomalous(r, i);
+                    boolean isA = d.isAnomalous(i);
 
                     if (useHTML) {
                         sb.append("<p>");
@@ -327,10 +404,9 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
                     }
 
                     String descriptor = NICE_LABELS[i];
-                    double stddev = getStddev(r, i);
-                    double value = getValue(r, i);
-                    double mean = getMean(r, i);
-                    double stddevDiff = getStddevDiff(stddev, value, mean);
+                    double value = d.getValue(i);
+                    double mean = d.getMean(i);
+                    double stddevDiff = d.getDeviation(i);
                     String aboveOrBelow = getAboveOrBelow(stddevDiff, "+", "−");
 
                     sb.append(descriptor);
@@ -355,41 +431,7 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
                 return sb.toString();
             }
 
-            private double getValue(Result r, int descriptor) {
-                double value = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-value-" + descriptor
-                                + ".double"));
-                return value;
-            }
-
-            private double getStddevDiff(double stddev, double value,
-                    double mean) {
-                double stddevDiff = (value - mean) / stddev;
-                return stddevDiff;
-            }
-
-            private double getMean(Result r, int descriptor) {
-                double mean = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-mean-" + descriptor
-                                + ".double"));
-                return mean;
-            }
-
-            private double getStddev(Result r, int descriptor) {
-                double stddev = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-stddev-" + descriptor
-                                + ".double"));
-                return stddev;
-            }
-
-            private boolean getIsAnomalous(Result r, int descriptor) {
-                int isAnomalous = Util.extractInt(r
-                        .getValue("anomaly-descriptor-is_anomalous-"
-                                + descriptor + ".int"));
-                return isAnomalous == 1 ? true : false;
-            }
-
-            private String getName(Result r) {
+            private String getName(SearchResult r) {
                 String name = r.getName();
                 name = name.substring(name.lastIndexOf('/') + 1);
                 return name;
@@ -402,29 +444,22 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
                 return aboveOrBelow;
             }
 
-            private int getSamples(Result r, int descriptor) {
-                int samples = Util.extractInt(r
-                        .getValue("anomaly-descriptor-count-" + descriptor
-                                + ".int"));
-                return samples;
-            }
-
-            public String annotateTooltip(Result r) {
+            public String annotateTooltip(SearchResult r) {
                 return annotate(r);
             }
 
             @Override
-            public String annotateOneLine(Result r) {
+            public String annotateOneLine(SearchResult r) {
                 return null;
             }
 
             @Override
-            public String annotateVerbose(Result r) {
+            public String annotateVerbose(SearchResult r) {
                 return null;
             }
 
             @Override
-            public String annotateNonHTML(Result r) {
+            public String annotateNonHTML(SearchResult r) {
                 return "TODO: not implemented";
             }
         };
@@ -439,20 +474,18 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
     }
 
     static protected List<Circle> extractCircles(byte[] data) {
-        List<Circle> circles = new ArrayList<Circle>();
-
-        ByteBuffer b = ByteBuffer.wrap(data);
-        b.order(ByteOrder.LITTLE_ENDIAN);
+        CircleData d = CircleData.decode(data);
+        List<Circle> circles = new ArrayList<Circle>(d.size());
 
-        while (b.hasRemaining()) {
+        for (int i = 0; i < d.size(); i++) {
             Circle c = new Circle();
 
-            c.x = b.getFloat();
-            c.y = b.getFloat();
-            c.a = b.getFloat();
-            c.b = b.getFloat();
-            c.t = b.getFloat();
-            c.inResult = b.getInt() != 0;
+            c.x = d.getX(i);
+            c.y = d.getY(i);
+            c.a = d.getA(i);
+            c.b = d.getB(i);
+            c.t = d.getT(i);
+            c.inResult = d.isInResult(i);
 
             circles.add(c);
         }
@@ -463,7 +496,7 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
     @Override
     public Set<String> getPushAttributes() {
         Set<String> set = new HashSet<String>();
-        addAnomalyAttributesToSet(set);
+        AnomalyDescriptorView.addKeys(set, descriptorIndices);
         set.add("thumbnail.jpeg");
         set.add("circle-data");
         set.add("Device-Name");
@@ -474,14 +507,25 @@ public class CircleAnomalyFilter implements StrangeFindSearch {
         return set;
     }
 
-    private void addAnomalyAttributesToSet(Set<String> set) {
-        String a = "anomaly-descriptor-";
-        for (int i = 0; i < LABELS.length; i++) {
-            set.add(a + "value-" + i + ".double");
-            set.add(a + "mean-" + i + ".double");
-            set.add(a + "stddev-" + i + ".double");
-            set.add(a + "count-" + i + ".int");
-            set.add(a + "is_anomalous-" + i + ".int");
-        }
+    @Override
+    public String[] getDescriptorNames() {
+        return LABELS.clone();
+    }
+
+    @Override
+    public void setDescriptorIndices(int indices[]) {
+        descriptorIndices = indices.clone();
+    }
+
+    @Override
+    public void setConfiguration(Properties p) {
+        SearchSettings.apply(p, ignoreSpinner, LABELS, checkboxes, stddevs);
+    }
+
+    @Override
+    public Properties getConfiguration() {
+        Properties p = new Properties();
+        SearchSettings.store(p, ignoreSpinner, LABELS, checkboxes, stddevs);
+        return p;
     }
 }
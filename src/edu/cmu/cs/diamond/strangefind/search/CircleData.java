@@ -0,0 +1,120 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The circle-data attribute, decoded once into parallel primitive arrays.
+ * Each record on the wire is five little-endian floats (x, y, a, b, t)
+ * followed by an int inResult flag.
+ */
+public class CircleData {
+    private static final int RECORD_SIZE = 6 * 4;
+
+    final private float x[];
+
+    final private float y[];
+
+    final private float a[];
+
+    final private float b[];
+
+    final private float t[];
+
+    final private boolean inResult[];
+
+    private CircleData(int n) {
+        x = new float[n];
+        y = new float[n];
+        a = new float[n];
+        b = new float[n];
+        t = new float[n];
+        inResult = new boolean[n];
+    }
+
+    public static CircleData decode(byte data[]) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        int n = data.length / RECORD_SIZE;
+        CircleData d = new CircleData(n);
+        for (int i = 0, pos = 0; i < n; i++, pos += RECORD_SIZE) {
+            d.x[i] = buf.getFloat(pos);
+            d.y[i] = buf.getFloat(pos + 4);
+            d.a[i] = buf.getFloat(pos + 8);
+            d.b[i] = buf.getFloat(pos + 12);
+            d.t[i] = buf.getFloat(pos + 16);
+            d.inResult[i] = buf.getInt(pos + 20) != 0;
+        }
+
+        return d;
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    public float getX(int i) {
+        return x[i];
+    }
+
+    public float getY(int i) {
+        return y[i];
+    }
+
+    public float getA(int i) {
+        return a[i];
+    }
+
+    public float getB(int i) {
+        return b[i];
+    }
+
+    public float getT(int i) {
+        return t[i];
+    }
+
+    public boolean isInResult(int i) {
+        return inResult[i];
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Decides how much of each search the servers may answer from their result
+ * cache. The anomaly stage keeps its state in session variables, so it is
+ * given a fresh nonce unless one is fixed for a run of searches over the
+ * same scope, see setAnomalyNonce. By default the resources sent with a stage are
+ * packed once per process by FilterCache: their bytes stay the same for the
+ * searches of one run of the client, but carry the time they were packed, so
+ * they differ from one run to the next. In deterministic mode they are packed
+ * with sorted entries and a fixed time, so a feature extraction stage's
+ * results can be reused across client runs as long as the code, arguments
+ * and resources stay the same.
+ */
+public class FilterArguments {
+    private static volatile boolean deterministic = Boolean
+            .getBoolean("strangefind.deterministic");
+
+    private static volatile String anomalyNonce;
+
+    private FilterArguments() {
+    }
+
+    public static boolean isDeterministic() {
+        return deterministic;
+    }
+
+    public static void setDeterministic(boolean deterministic) {
+        FilterArguments.deterministic = deterministic;
+    }
+
+    /**
+     * Returns the value for the anomaly filter's second argument, which it
+     * ignores; a new one on every call keeps the stage out of the cache.
+     */
+    public static String getAnomalyNonce() {
+        String nonce = anomalyNonce;
+        return nonce == null ? UUID.randomUUID().toString() : nonce;
+    }
+
+    /**
+     * Makes getAnomalyNonce return nonce, or a new value on every call again
+     * if it is null. Searches given the same nonce get the anomaly verdict
+     * from the servers' cache for the objects an earlier one evaluated, so
+     * those are neither judged nor counted in the session variables again,
+     * as long as the servers still have them cached.
+     */
+    public static void setAnomalyNonce(String nonce) {
+        anomalyNonce = nonce;
+    }
+
+    /**
+     * Returns a zip file holding the named resources, found relative to c.
+     */
+    public static byte[] encodeResources(Class<?> c, String names[])
+            throws IOException {
+        if (deterministic) {
+            return FilterCache.getStableResourceZip(c, names);
+        } else {
+            return FilterCache.getResourceZip(c, names);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import edu.cmu.cs.diamond.opendiamond.FilterCode;
+import edu.cmu.cs.diamond.opendiamond.Util;
+
+/**
+ * Filter code and blobs, read from disk once and kept until the file
+ * changes. Entries are keyed by path and checked against the file's
+ * modification time and length on every lookup, which costs a stat instead
+ * of a read.
+ * <p>
+ * Returned arrays are shared and must not be modified.
+ */
+public class FilterCache {
+    public static final String FILTER_DIR = "/usr/share/diamond/filters";
+
+    // zip entries hold local time, so this is the same date everywhere
+    private static final long STABLE_ZIP_TIME = new GregorianCalendar(2000,
+            0, 1).getTimeInMillis();
+
+    private static class Entry {
+        final long lastModified;
+
+        final long length;
+
+        final byte data[];
+
+        FilterCode code;
+
+        Entry(long lastModified, long length, byte data[]) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.data = data;
+        }
+    }
+
+    private static final Map<String, Entry> files =
+            new HashMap<String, Entry>();
+
+    // classpath resources do not change while we run
+    private static final Map<String, Entry> resources =
+            new HashMap<String, Entry>();
+
+    private FilterCache() {
+    }
+
+    /**
+     * Returns the filter code named name in the filter directory, e.g.
+     * "fil_rgb".
+     */
+    public static FilterCode getFilterCode(String name) throws IOException {
+        String path = new File(FILTER_DIR, name).getPath();
+        synchronized (files) {
+            Entry e = getFile(path);
+            if (e.code == null) {
+                e.code = new FilterCode(new ByteArrayInputStream(e.data));
+            }
+            return e.code;
+        }
+    }
+
+    /**
+     * Returns the contents of the blob named name in the filter directory.
+     */
+    public static byte[] getBlob(String name) throws IOException {
+        String path = new File(FILTER_DIR, name).getPath();
+        synchronized (files) {
+            return getFile(path).data;
+        }
+    }
+
+    /**
+     * Returns a zip file holding the named resources, found relative to c.
+     */
+    public static byte[] getResourceZip(Class<?> c, String names[])
+            throws IOException {
+        return getResourceEntry(c, names, false).data;
+    }
+
+    /**
+     * Like getResourceZip, but entries are sorted by name and carry a fixed
+     * time, so that the same resources always give the same bytes.
+     */
+    public static byte[] getStableResourceZip(Class<?> c, String names[])
+            throws IOException {
+        return getResourceEntry(c, names, true).data;
+    }
+
+    private static Entry getFile(String path) throws IOException {
+        File f = new File(path);
+        long lastModified = f.lastModified();
+        long length = f.length();
+
+        Entry e = files.get(path);
+        if (e != null && e.lastModified == lastModified && e.length == length) {
+            return e;
+        }
+        files.remove(path);
+
+        if (!f.isFile()) {
+            throw new FileNotFoundException(path);
+        }
+        InputStream in = new FileInputStream(f);
+        try {
+            e = new Entry(lastModified, length, Util.readFully(in));
+        } finally {
+            in.close();
+        }
+        files.put(path, e);
+        return e;
+    }
+
+    private static Entry getResourceEntry(Class<?> c, String names[],
+            boolean stable) throws IOException {
+        String key = c.getName() + Arrays.toString(names)
+                + (stable ? " stable" : "");
+        synchronized (resources) {
+            Entry e = resources.get(key);
+            if (e != null) {
+                return e;
+            }
+
+            Map<String, byte[]> zipMap = new HashMap<String, byte[]>();
+            for (String r : names) {
+                InputStream in = c.getResourceAsStream("resources/" + r);
+                if (in == null) {
+                    throw new FileNotFoundException("resources/" + r);
+                }
+                try {
+                    zipMap.put(r, Util.readFully(in));
+                } finally {
+                    in.close();
+                }
+            }
+            byte data[] = stable ? encodeStableZipFile(zipMap) : Util
+                    .encodeZipFile(zipMap);
+            e = new Entry(0, data.length, data);
+            resources.put(key, e);
+            return e;
+        }
+    }
+
+    private static byte[] encodeStableZipFile(Map<String, byte[]> zipMap)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (Map.Entry<String, byte[]> e : new TreeMap<String, byte[]>(zipMap)
+                .entrySet()) {
+            ZipEntry ze = new ZipEntry(e.getKey());
+            ze.setTime(STABLE_ZIP_TIME);
+            zip.putNextEntry(ze);
+            zip.write(e.getValue());
+            zip.closeEntry();
+        }
+        zip.close();
+        return out.toByteArray();
+    }
+}
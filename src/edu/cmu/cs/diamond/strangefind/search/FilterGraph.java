@@ -0,0 +1,167 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.cs.diamond.opendiamond.Filter;
+
+/**
+ * Builds the filters for several searches run in one pass. A stage that does
+ * the same work as one already added, such as the rgb and thumb stages most
+ * searches start with, is added once and the later searches read from it.
+ * Other stages keep their names unless taken, in which case the number of
+ * the search is appended. The anomaly stages are combined into one, so that
+ * an object passes if any search finds it anomalous, and each descriptor's
+ * attributes are written once.
+ */
+public class FilterGraph {
+    final private List<FilterStage> stages = new ArrayList<FilterStage>();
+
+    final private List<AnomalyStage> anomalies = new ArrayList<AnomalyStage>();
+
+    private int searches;
+
+    /**
+     * Adds the stages of one search, in dependency order. Null stages, which
+     * could not be loaded, are left out.
+     */
+    public void add(FilterStage searchStages[], AnomalyStage anomaly) {
+        searches++;
+
+        // names in the search -> names in the graph
+        Map<String, String> names = new HashMap<String, String>();
+        for (FilterStage s : searchStages) {
+            if (s == null) {
+                continue;
+            }
+
+            FilterStage stage = s.rename(s.getName(), rename(s
+                    .getDependencies(), names));
+            FilterStage existing = findSameWork(stage);
+            if (existing != null) {
+                names.put(s.getName(), existing.getName());
+                continue;
+            }
+
+            String name = s.getName();
+            for (int i = searches; isTaken(name); i++) {
+                name = s.getName() + "-" + i;
+            }
+            names.put(s.getName(), name);
+            stages.add(stage.rename(name, stage.getDependencies()));
+        }
+
+        if (anomaly != null) {
+            anomalies.add(anomaly.rename(rename(anomaly.getDependencies(),
+                    names)));
+        }
+    }
+
+    public List<FilterStage> getStages() {
+        return new ArrayList<FilterStage>(stages);
+    }
+
+    /**
+     * Returns the combined anomaly stage, or null if there is none.
+     */
+    public AnomalyStage getAnomalyStage() {
+        if (anomalies.isEmpty()) {
+            return null;
+        }
+        return AnomalyStage.combine(anomalies);
+    }
+
+    public List<Filter> createFilters() {
+        List<Filter> filters = new ArrayList<Filter>();
+        for (FilterStage s : stages) {
+            filters.add(s.createFilter());
+        }
+
+        AnomalyStage anomaly = getAnomalyStage();
+        if (anomaly != null) {
+            try {
+                Filter anom = anomaly.createFilter();
+                System.out.println(anom);
+                filters.add(anom);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return filters;
+    }
+
+    private FilterStage findSameWork(FilterStage stage) {
+        for (FilterStage s : stages) {
+            if (s.isSameWork(stage)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private boolean isTaken(String name) {
+        if (name.equals(AnomalyStage.NAME)) {
+            return true;
+        }
+        for (FilterStage s : stages) {
+            if (s.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> rename(List<String> dependencies,
+            Map<String, String> names) {
+        List<String> result = new ArrayList<String>();
+        for (String d : dependencies) {
+            String n = names.get(d);
+            result.add(n == null ? d : n);
+        }
+        return result;
+    }
+}
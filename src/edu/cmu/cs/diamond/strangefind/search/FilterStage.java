@@ -0,0 +1,128 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.cmu.cs.diamond.opendiamond.Filter;
+import edu.cmu.cs.diamond.opendiamond.FilterCode;
+
+/**
+ * A feature extraction filter of a search, described rather than built, so
+ * that the stages of several searches can be compared and merged before the
+ * filters are made.
+ */
+public class FilterStage {
+    final private String name;
+
+    final private FilterCode code;
+
+    final private int minScore;
+
+    final private List<String> dependencies;
+
+    final private List<String> arguments;
+
+    final private byte blob[];
+
+    public FilterStage(String name, FilterCode code, int minScore,
+            List<String> dependencies, List<String> arguments) {
+        this(name, code, minScore, dependencies, arguments, null);
+    }
+
+    public FilterStage(String name, FilterCode code, int minScore,
+            List<String> dependencies, List<String> arguments, byte blob[]) {
+        this.name = name;
+        this.code = code;
+        this.minScore = minScore;
+        this.dependencies = Collections
+                .unmodifiableList(new ArrayList<String>(dependencies));
+        this.arguments = Collections.unmodifiableList(new ArrayList<String>(
+                arguments));
+        this.blob = blob;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Returns a copy of this stage under another name, reading from other
+     * stages.
+     */
+    public FilterStage rename(String name, List<String> dependencies) {
+        return new FilterStage(name, code, minScore, dependencies, arguments,
+                blob);
+    }
+
+    /**
+     * Returns true if other computes the same thing as this stage: same code,
+     * threshold, inputs, arguments and blob. Names are not compared. Code is
+     * compared by identity, since FilterCache gives out one instance per file.
+     */
+    public boolean isSameWork(FilterStage other) {
+        return code == other.code && minScore == other.minScore
+                && dependencies.equals(other.dependencies)
+                && arguments.equals(other.arguments)
+                && Arrays.equals(blob, other.blob);
+    }
+
+    public Filter createFilter() {
+        if (blob == null) {
+            return new Filter(name, code, minScore, dependencies, arguments);
+        } else {
+            return new Filter(name, code, minScore, dependencies, arguments,
+                    blob);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + dependencies + " " + arguments;
+    }
+}
@@ -47,9 +47,10 @@ import java.util.*;
 import javax.swing.*;
 
 import edu.cmu.cs.diamond.opendiamond.*;
+import edu.cmu.cs.diamond.strangefind.AnomalyDescriptorView;
 import edu.cmu.cs.diamond.strangefind.Annotator;
 import edu.cmu.cs.diamond.strangefind.Decorator;
-import edu.cmu.cs.diamond.strangefind.LogicEngine;
+import edu.cmu.cs.diamond.strangefind.SearchResult;
 import edu.cmu.cs.diamond.strangefind.ResultViewer;
 import edu.cmu.cs.diamond.strangefind.StrangeFindSearch;
 
@@ -64,6 +65,10 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
     final private JSpinner ignoreSpinner = new JSpinner(new SpinnerNumberModel(
             5, 0, 100, 1));
 
+    // where the descriptors are when run with other searches
+    private int descriptorIndices[] = AnomalyStage
+            .getOwnIndices(LABELS.length);
+
     final private JCheckBox[] checkboxes = new JCheckBox[LABELS.length];
 
     final private JSpinner[] stddevs = new JSpinner[LABELS.length];
@@ -106,20 +111,19 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
     }
 
     @Override
-    public Filter[] getFilters() {
-        Filter rgb = null;  // only for thumbnail
-        Filter thumb = null;
-        Filter oomuscle = null;
-        Filter anom = null;
+    public FilterStage[] getFilters() {
+        FilterStage rgb = null;  // only for thumbnail
+        FilterStage thumb = null;
+        FilterStage oomuscle = null;
         try {
             FilterCode c;
 
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_rgb"));
-            rgb = new Filter("rgb", c, 1, Arrays.asList(new String[0]),
+            c = FilterCache.getFilterCode("fil_rgb");
+            rgb = new FilterStage("rgb", c, 1, Arrays.asList(new String[0]),
                     Arrays.asList(new String[0]));
 
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_thumb"));
-            thumb = new Filter("thumb", c, 1,
+            c = FilterCache.getFilterCode("fil_thumb");
+            thumb = new FilterStage("thumb", c, 1,
                     Arrays.asList(new String[] { "rgb" }),
                     Arrays.asList(new String[] {
                                     Integer.toString(ResultViewer
@@ -127,67 +131,62 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
                                     Integer.toString(ResultViewer
                                             .getPreferredHeight()) }));
 
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_oomuscle"));
-            byte blob[] = Util.readFully(new FileInputStream("/usr/share/diamond/filters/blob_oomuscle"));
-            oomuscle = new Filter("oomuscle", c, 1,
+            c = FilterCache.getFilterCode("fil_oomuscle");
+            byte blob[] = FilterCache.getBlob("blob_oomuscle");
+            oomuscle = new FilterStage("oomuscle", c, 1,
                     Arrays.asList(new String[] { "rgb" }),
                     Arrays.asList(new String[] { "OOMuscleAnalytics" }), blob);
 
-            List<String> paramsList = new ArrayList<String>();
-            for (int i = 0; i < checkboxes.length; i++) {
-                paramsList.add(LABELS[i]);
-                paramsList.add(stddevs[i].getValue().toString());
-            }
-
-            StringBuilder logicalExpression = new StringBuilder();
-            boolean anySelected = false;
-            boolean exactlyOneSelected = false;
-            String lastSelected = null;
-            logicalExpression.append("OR(");
-            for (int i = 0; i < checkboxes.length; i++) {
-                if (checkboxes[i].isSelected()) {
-                    if (anySelected) {
-                        exactlyOneSelected = false;
-                        logicalExpression.append(",");
-                    } else {
-                        exactlyOneSelected = true;
-                    }
-                    lastSelected = "$" + (i + 1);
-                    logicalExpression.append(lastSelected);
-                    anySelected = true;
-                }
-            }
-            logicalExpression.append(")");
-
-            if (!anySelected) {
-                logicalExpression = new StringBuilder(); // clear
-            } else if (exactlyOneSelected) {
-                logicalExpression = new StringBuilder(lastSelected);
-            }
-
-            String anomArgs[] = new String[paramsList.size() + 3];
-            anomArgs[0] = ignoreSpinner.getValue().toString(); // skip
-            anomArgs[1] = UUID.randomUUID().toString(); // random value
-            anomArgs[2] = LogicEngine
-                    .getMachineCodeForExpression(logicalExpression.toString());
-            System.arraycopy(paramsList.toArray(), 0, anomArgs, 3, paramsList
-                    .size());
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_anomaly"));
-            anom = new Filter("anomaly", c, 1,
-                    Arrays.asList(new String[] { "oomuscle" }),
-                    Arrays.asList(anomArgs));
-
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        return new Filter[] { rgb, thumb, oomuscle, anom };
+        return new FilterStage[] { rgb, thumb, oomuscle };
+    }
+
+    @Override
+    public AnomalyStage getAnomalyStage() {
+        String stddevList[] = new String[LABELS.length];
+        for (int i = 0; i < stddevList.length; i++) {
+            stddevList[i] = stddevs[i].getValue().toString();
+        }
+
+        StringBuilder logicalExpression = new StringBuilder();
+        boolean anySelected = false;
+        boolean exactlyOneSelected = false;
+        String lastSelected = null;
+        logicalExpression.append("OR(");
+        for (int i = 0; i < checkboxes.length; i++) {
+            if (checkboxes[i].isSelected()) {
+                if (anySelected) {
+                    exactlyOneSelected = false;
+                    logicalExpression.append(",");
+                } else {
+                    exactlyOneSelected = true;
+                }
+                lastSelected = "$" + (i + 1);
+                logicalExpression.append(lastSelected);
+                anySelected = true;
+            }
+        }
+        logicalExpression.append(")");
+
+        if (!anySelected) {
+            logicalExpression = new StringBuilder(); // clear
+        } else if (exactlyOneSelected) {
+            logicalExpression = new StringBuilder(lastSelected);
+        }
+
+        return new AnomalyStage(Arrays.asList(new String[] { "oomuscle" }),
+                (Integer) ignoreSpinner.getValue(), getDescriptorNames(),
+                stddevList, logicalExpression.toString());
     }
 
     @Override
     public Annotator getAnnotator() {
+        final int indices[] = descriptorIndices.clone();
         final List<String> selectedLabels = new ArrayList<String>();
         final List<String> niceSelectedLabels = new ArrayList<String>();
         for (int i = 0; i < checkboxes.length; i++) {
@@ -199,7 +198,7 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
         }
 
         return new Annotator() {
-            public String annotate(Result r) {
+            public String annotate(SearchResult r) {
 
                 boolean useHTML = true;
 
@@ -210,11 +209,12 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
                     sb.append("<html>");
                 }
 
+                AnomalyDescriptorView d = AnomalyDescriptorView.get(r, indices);
                 String server = r.getServerName();
-                int samples = getSamples(r, 0);
+                int samples = d.getCount(0);
 
                 for (int i = 0; i < LABELS.length; i++) {
-                    boolean isA = getIsAnomalous(r, i);
+                    boolean isA = d.isAnomalous(i);
 
                     if (useHTML) {
                         sb.append("<p>");
@@ -229,10 +229,9 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
                     }
 
                     String descriptor = NICE_LABELS[i];
-                    double stddev = getStddev(r, i);
-                    double value = getValue(r, i);
-                    double mean = getMean(r, i);
-                    double stddevDiff = getStddevDiff(stddev, value, mean);
+                    double value = d.getValue(i);
+                    double mean = d.getMean(i);
+                    double stddevDiff = d.getDeviation(i);
                     String aboveOrBelow = getAboveOrBelow(stddevDiff, "+", "−");
 
                     sb.append(descriptor);
@@ -256,40 +255,6 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
                 return sb.toString();
             }
 
-            private double getValue(Result r, int descriptor) {
-                double value = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-value-" + descriptor
-                                + ".double"));
-                return value;
-            }
-
-            private double getStddevDiff(double stddev, double value,
-                    double mean) {
-                double stddevDiff = (value - mean) / stddev;
-                return stddevDiff;
-            }
-
-            private double getMean(Result r, int descriptor) {
-                double mean = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-mean-" + descriptor
-                                + ".double"));
-                return mean;
-            }
-
-            private double getStddev(Result r, int descriptor) {
-                double stddev = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-stddev-" + descriptor
-                                + ".double"));
-                return stddev;
-            }
-
-            private boolean getIsAnomalous(Result r, int descriptor) {
-                int isAnomalous = Util.extractInt(r
-                        .getValue("anomaly-descriptor-is_anomalous-"
-                                + descriptor + ".int"));
-                return isAnomalous == 1 ? true : false;
-            }
-
             private String getAboveOrBelow(double stddevDiff, String above,
                     String below) {
                 String aboveOrBelow = Math.signum(stddevDiff) >= 0.0 ? above
@@ -297,13 +262,6 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
                 return aboveOrBelow;
             }
 
-            private int getSamples(Result r, int descriptor) {
-                int samples = Util.extractInt(r
-                        .getValue("anomaly-descriptor-count-" + descriptor
-                                + ".int"));
-                return samples;
-            }
-
             private String format(double d, DecimalFormat df) {
                 if (Double.isNaN(d)) {
                     return "NaN";
@@ -312,22 +270,22 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
                 }
             }
 
-            public String annotateTooltip(Result r) {
+            public String annotateTooltip(SearchResult r) {
                 return annotate(r);
             }
 
             @Override
-            public String annotateOneLine(Result r) {
+            public String annotateOneLine(SearchResult r) {
                 return null;
             }
 
             @Override
-            public String annotateVerbose(Result r) {
+            public String annotateVerbose(SearchResult r) {
                 return null;
             }
 
             @Override
-            public String annotateNonHTML(Result r) {
+            public String annotateNonHTML(SearchResult r) {
                 return "TODO: not implemented";
             }
         };
@@ -341,18 +299,33 @@ public class OOMuscleAnomalyFilter implements StrangeFindSearch {
     @Override
     public Set<String> getPushAttributes() {
         Set<String> set = new HashSet<String>();
-        String a = "anomaly-descriptor-";
-        for (int i = 0; i < LABELS.length; i++) {
-            set.add(a + "value-" + i + ".double");
-            set.add(a + "mean-" + i + ".double");
-            set.add(a + "stddev-" + i + ".double");
-            set.add(a + "count-" + i + ".int");
-            set.add(a + "is_anomalous-" + i + ".int");
-        }
+        AnomalyDescriptorView.addKeys(set, descriptorIndices);
         set.add("thumbnail.jpeg");
         set.add("_cols.int");
         set.add("_rows.int");
         set.add("Device-Name");
         return set;
     }
+
+    @Override
+    public String[] getDescriptorNames() {
+        return LABELS.clone();
+    }
+
+    @Override
+    public void setDescriptorIndices(int indices[]) {
+        descriptorIndices = indices.clone();
+    }
+
+    @Override
+    public void setConfiguration(Properties p) {
+        SearchSettings.apply(p, ignoreSpinner, LABELS, checkboxes, stddevs);
+    }
+
+    @Override
+    public Properties getConfiguration() {
+        Properties p = new Properties();
+        SearchSettings.store(p, ignoreSpinner, LABELS, checkboxes, stddevs);
+        return p;
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ *  StrangeFind, an anomaly detector for the OpenDiamond platform
+ *
+ *  Copyright (c) 2007-2008 Carnegie Mellon University
+ *  All rights reserved.
+ *
+ *  StrangeFind is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, version 2.
+ *
+ *  StrangeFind is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with StrangeFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Linking StrangeFind statically or dynamically with other modules is
+ *  making a combined work based on StrangeFind. Thus, the terms and
+ *  conditions of the GNU General Public License cover the whole
+ *  combination.
+ * 
+ *  In addition, as a special exception, the copyright holders of
+ *  StrangeFind give you permission to combine StrangeFind with free software
+ *  programs or libraries that are released under the GNU LGPL or the
+ *  Eclipse Public License 1.0. You may copy and distribute such a system
+ *  following the terms of the GNU GPL for StrangeFind and the licenses of
+ *  the other code concerned, provided that you include the source code of
+ *  that other code when and as the GNU GPL requires distribution of source
+ *  code.
+ *
+ *  Note that people who make modified versions of StrangeFind are not
+ *  obligated to grant this special exception for their modified versions;
+ *  it is their choice whether to do so. The GNU General Public License
+ *  gives permission to release a modified version without this exception;
+ *  this exception also makes it possible to release a modified version
+ *  which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.strangefind.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javax.swing.JCheckBox;
+import javax.swing.JSpinner;
+
+/**
+ * Reads and writes the settings all searches share in a search
+ * configuration: "priming" for the priming count, and "select.<label>" and
+ * "sigma.<label>" for whether each descriptor is used and at how many
+ * standard deviations. Keys left out keep their current values.
+ */
+final class SearchSettings {
+    private SearchSettings() {
+    }
+
+    static void apply(Properties p, JSpinner ignoreSpinner, String labels[],
+            JCheckBox checkboxes[], JSpinner stddevs[]) {
+        List<String> known = Arrays.asList(labels);
+        for (String key : p.stringPropertyNames()) {
+            String label = null;
+            if (key.startsWith("select.")) {
+                label = key.substring("select.".length());
+            } else if (key.startsWith("sigma.")) {
+                label = key.substring("sigma.".length());
+            }
+            if (label != null && !known.contains(label)) {
+                throw new IllegalArgumentException("unknown descriptor "
+                        + label + " in " + key);
+            }
+        }
+
+        String v = p.getProperty("priming");
+        if (v != null) {
+            ignoreSpinner.setValue(parseInt("priming", v));
+        }
+
+        for (int i = 0; i < labels.length; i++) {
+            String key = "select." + labels[i];
+            v = p.getProperty(key);
+            if (v != null) {
+                checkboxes[i].setSelected(parseBoolean(key, v));
+            }
+
+            key = "sigma." + labels[i];
+            v = p.getProperty(key);
+            if (v != null) {
+                stddevs[i].setValue(parseDouble(key, v));
+            }
+        }
+    }
+
+    static void store(Properties p, JSpinner ignoreSpinner, String labels[],
+            JCheckBox checkboxes[], JSpinner stddevs[]) {
+        p.setProperty("priming", ignoreSpinner.getValue().toString());
+        for (int i = 0; i < labels.length; i++) {
+            p.setProperty("select." + labels[i], Boolean
+                    .toString(checkboxes[i].isSelected()));
+            p.setProperty("sigma." + labels[i], stddevs[i].getValue()
+                    .toString());
+        }
+    }
+
+    static int parseInt(String key, String v) {
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad value for " + key + ": "
+                    + v);
+        }
+    }
+
+    static double parseDouble(String key, String v) {
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad value for " + key + ": "
+                    + v);
+        }
+    }
+
+    static boolean parseBoolean(String key, String v) {
+        v = v.trim();
+        if (v.equalsIgnoreCase("true")) {
+            return true;
+        } else if (v.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("bad value for " + key + ": " + v);
+    }
+}
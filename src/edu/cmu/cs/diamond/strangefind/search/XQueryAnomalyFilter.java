@@ -53,9 +53,10 @@ import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import edu.cmu.cs.diamond.opendiamond.*;
+import edu.cmu.cs.diamond.strangefind.AnomalyDescriptorView;
 import edu.cmu.cs.diamond.strangefind.Annotator;
 import edu.cmu.cs.diamond.strangefind.Decorator;
-import edu.cmu.cs.diamond.strangefind.LogicEngine;
+import edu.cmu.cs.diamond.strangefind.SearchResult;
 import edu.cmu.cs.diamond.strangefind.StrangeFindSearch;
 
 public class XQueryAnomalyFilter implements StrangeFindSearch {
@@ -63,21 +64,19 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
     private boolean negateEasyOp;
 
     public XQueryAnomalyFilter(Component parent) {
-        attrMap = new HashMap<String, String>();
+        this(chooseAttrFile(parent));
+    }
 
-        // load file
-        JFileChooser chooser = new JFileChooser();
-        FileNameExtensionFilter filter = new FileNameExtensionFilter(
-                "Attribute Map Files", "attrmap");
-        chooser.setFileFilter(filter);
-        int returnVal = chooser.showOpenDialog(parent);
-        if (returnVal == JFileChooser.APPROVE_OPTION) {
-            File f = chooser.getSelectedFile();
-            parseAttrFile(f, attrMap);
-        } else {
-            // XXX
-            throw new RuntimeException("You must choose a file");
-        }
+    public XQueryAnomalyFilter(File attrFile) {
+        this(readAttrFile(attrFile));
+    }
+
+    /**
+     * Creates a search for the given XQuery expressions, by attribute name.
+     * Descriptors are numbered in the order of the map.
+     */
+    public XQueryAnomalyFilter(Map<String, String> attributes) {
+        attrMap = new LinkedHashMap<String, String>(attributes);
 
         // init GUI elements
         checkboxes = new JCheckBox[attrMap.size()];
@@ -99,6 +98,7 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
                 i++;
             }
         }
+        descriptorIndices = AnomalyStage.getOwnIndices(labels.length);
 
         for (int i = 0; i < niceLabels.length; i++) {
             checkboxes[i] = new JCheckBox(niceLabels[i] + " ($" + (i + 1) + ")");
@@ -118,6 +118,21 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
         }
     }
 
+    static private File chooseAttrFile(Component parent) {
+        // load file
+        JFileChooser chooser = new JFileChooser();
+        FileNameExtensionFilter filter = new FileNameExtensionFilter(
+                "Attribute Map Files", "attrmap");
+        chooser.setFileFilter(filter);
+        int returnVal = chooser.showOpenDialog(parent);
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            return chooser.getSelectedFile();
+        } else {
+            // XXX
+            throw new RuntimeException("You must choose a file");
+        }
+    }
+
     protected void updateEasyLogicExpression() {
         if (easyOp == "") {
             return; // not easy
@@ -169,6 +184,12 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
         t.setText(text);
     }
 
+    static private Map<String, String> readAttrFile(File f) {
+        Map<String, String> attrMap = new HashMap<String, String>();
+        parseAttrFile(f, attrMap);
+        return attrMap;
+    }
+
     static private void parseAttrFile(File f, Map<String, String> attrMap) {
         FileReader fr = null;
         BufferedReader in = null;
@@ -206,6 +227,7 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
     }
 
     public Annotator getAnnotator() {
+        final int indices[] = descriptorIndices.clone();
         final List<String> selectedLabels = new ArrayList<String>();
         final List<String> niceSelectedLabels = new ArrayList<String>();
         for (int i = 0; i < checkboxes.length; i++) {
@@ -217,19 +239,19 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
         }
 
         return new Annotator() {
-            public String annotate(Result r) {
+            public String annotate(SearchResult r) {
                 return annotateTooltip(r);
             }
 
-            public String annotateNonHTML(Result r) {
+            public String annotateNonHTML(SearchResult r) {
                 return annotateTooltip(r, false);
             }
 
-            public String annotateTooltip(Result r) {
+            public String annotateTooltip(SearchResult r) {
                 return annotateTooltip(r, true);
             }
 
-            private String annotateTooltip(Result r, boolean useHTML) {
+            private String annotateTooltip(SearchResult r, boolean useHTML) {
 
                 DecimalFormat df = new DecimalFormat("0.###");
                 StringBuilder sb = new StringBuilder();
@@ -238,12 +260,13 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
                     sb.append("<html>");
                 }
 
+                AnomalyDescriptorView d = AnomalyDescriptorView.get(r, indices);
                 String server = r.getServerName();
                 String name = getName(r);
-                int samples = getSamples(r, 0);
+                int samples = d.size() > 0 ? d.getCount(0) : 0;
 
                 for (int i = 0; i < labels.length; i++) {
-                    boolean isA = getIsAnomalous(r, i);
+                    boolean isA = d.isAnomalous(i);
 
                     if (useHTML) {
                         sb.append("<p>");
@@ -258,10 +281,9 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
                     }
 
                     String descriptor = niceLabels[i];
-                    double stddev = getStddev(r, i);
-                    double value = getValue(r, i);
-                    double mean = getMean(r, i);
-                    double stddevDiff = getStddevDiff(stddev, value, mean);
+                    double value = d.getValue(i);
+                    double mean = d.getMean(i);
+                    double stddevDiff = d.getDeviation(i);
                     String aboveOrBelow = getAboveOrBelow(stddevDiff, "+", "−");
 
                     sb.append(descriptor);
@@ -321,7 +343,7 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
                 return getAboveOrBelow(stddevDiff, "above", "below");
             }
 
-            private String getName(Result r) {
+            private String getName(SearchResult r) {
                 String name = r.getName();
                 name = name.substring(name.lastIndexOf('/') + 1);
                 return name;
@@ -334,58 +356,18 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
                 return aboveOrBelow;
             }
 
-            private int getSamples(Result r, int descriptor) {
-                int samples = Util.extractInt(r
-                        .getValue("anomaly-descriptor-count-" + descriptor
-                                + ".int"));
-                return samples;
-            }
-
-            private double getValue(Result r, int descriptor) {
-                double value = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-value-" + descriptor
-                                + ".double"));
-                return value;
-            }
-
-            private double getStddevDiff(double stddev, double value,
-                    double mean) {
-                double stddevDiff = (value - mean) / stddev;
-                return stddevDiff;
-            }
-
-            private double getMean(Result r, int descriptor) {
-                double mean = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-mean-" + descriptor
-                                + ".double"));
-                return mean;
-            }
-
             private double getValue(String strValue) {
                 double value = Double.parseDouble(strValue);
                 return value;
             }
 
-            private double getStddev(Result r, int descriptor) {
-                double stddev = Util.extractDouble(r
-                        .getValue("anomaly-descriptor-stddev-" + descriptor
-                                + ".double"));
-                return stddev;
-            }
-
-            private boolean getIsAnomalous(Result r, int descriptor) {
-                int isAnomalous = Util.extractInt(r
-                        .getValue("anomaly-descriptor-is_anomalous-"
-                                + descriptor + ".int"));
-                return isAnomalous == 1 ? true : false;
-            }
-
             @Override
-            public String annotateOneLine(Result r) {
+            public String annotateOneLine(SearchResult r) {
+                AnomalyDescriptorView d = AnomalyDescriptorView.get(r, indices);
                 StringBuilder sb = new StringBuilder();
 
                 for (int i = 0; i < labels.length; i++) {
-                    if (getIsAnomalous(r, i)) {
+                    if (d.isAnomalous(i)) {
                         sb.append("$" + (i + 1) + " ");
                     }
                 }
@@ -398,7 +380,7 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
             }
 
             @Override
-            public String annotateVerbose(Result r) {
+            public String annotateVerbose(SearchResult r) {
                 // TODO do this with XML parser
                 // XXX
                 ByteArrayInputStream in = new ByteArrayInputStream(r.getData());
@@ -444,49 +426,40 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
         return null;
     }
 
-    public Filter[] getFilters() {
-        Filter xquery = null;
-        Filter anom = null;
+    public FilterStage[] getFilters() {
+        FilterStage xquery = null;
         try {
             FilterCode c;
 
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_xquery"));
+            c = FilterCache.getFilterCode("fil_xquery");
 
             byte queryBlob[] = generateQueryBlob();
 
             System.out.println("queryBlob: " + new String(queryBlob));
 
-            xquery = new Filter("xquery", c, 0, Arrays.asList(new String[0]),
-                    Arrays.asList(new String[] {}), queryBlob);
+            xquery = new FilterStage("xquery", c, 0, Arrays
+                    .asList(new String[0]), Arrays.asList(new String[] {}),
+                    queryBlob);
             System.out.println(xquery);
 
-            List<String> paramsList = new ArrayList<String>();
-            for (int i = 0; i < checkboxes.length; i++) {
-                paramsList.add(labels[i]);
-                paramsList.add(stddevs[i].getValue().toString());
-            }
-
-            String anomArgs[] = new String[paramsList.size() + 3];
-            anomArgs[0] = ignoreSpinner.getValue().toString(); // skip
-            anomArgs[1] = UUID.randomUUID().toString(); // random value
-            anomArgs[2] = LogicEngine
-                    .getMachineCodeForExpression(logicalExpressionTextArea
-                            .getText()); // machine code
-            System.arraycopy(paramsList.toArray(), 0, anomArgs, 3, paramsList
-                    .size());
-            c = new FilterCode(new FileInputStream("/usr/share/diamond/filters/fil_anomaly"));
-            anom = new Filter("anomaly", c, 1,
-                    Arrays.asList(new String[] { "xquery" }),
-                    Arrays.asList(anomArgs));
-            System.out.println(anom);
-
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        return new Filter[] { xquery, anom };
+        return new FilterStage[] { xquery };
+    }
+
+    public AnomalyStage getAnomalyStage() {
+        String stddevList[] = new String[labels.length];
+        for (int i = 0; i < stddevList.length; i++) {
+            stddevList[i] = stddevs[i].getValue().toString();
+        }
+
+        return new AnomalyStage(Arrays.asList(new String[] { "xquery" }),
+                (Integer) ignoreSpinner.getValue(), getDescriptorNames(),
+                stddevList, logicalExpressionTextArea.getText());
     }
 
     private byte[] generateQueryBlob() {
@@ -520,13 +493,16 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
 
     final private String labels[];
 
+    // where the descriptors are when run with other searches
+    private int descriptorIndices[];
+
     final private String niceLabels[];
 
     final private String queries[];
 
     final private JTextArea logicalExpressionTextArea = new JTextArea();
 
-    protected String easyOp;
+    protected String easyOp = "OR";
 
     public JPanel getInterface() {
         // XXX do this another way
@@ -577,7 +553,7 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
                 }
             }
         });
-        cb.setSelected(true);
+        JRadioButton orButton = cb;
 
         cb = new JRadioButton("AND");
         cb.addChangeListener(new ChangeListener() {
@@ -592,6 +568,7 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
         });
         bg.add(cb);
         h.add(cb);
+        JRadioButton andButton = cb;
 
         cb = new JRadioButton("NOT");
         bg.add(cb);
@@ -606,6 +583,7 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
                 }
             }
         });
+        JRadioButton notButton = cb;
 
         cb = new JRadioButton("Custom:");
         cb.addChangeListener(new ChangeListener() {
@@ -621,17 +599,100 @@ public class XQueryAnomalyFilter implements StrangeFindSearch {
         });
         bg.add(cb);
         h.add(cb);
+        JRadioButton customButton = cb;
 
         logicalExpressionTextArea.setRows(4);
         logicalExpressionTextArea.setLineWrap(true);
         logicalExpressionTextArea.setEditable(false);
         b.add(new JScrollPane(logicalExpressionTextArea));
 
+        // as configured, OR unless set otherwise
+        if (easyOp.equals("")) {
+            customButton.setSelected(true);
+        } else if (negateEasyOp) {
+            notButton.setSelected(true);
+        } else if (easyOp.equals("AND")) {
+            andButton.setSelected(true);
+        } else {
+            orButton.setSelected(true);
+        }
+
         return result;
     }
 
     @Override
     public Set<String> getPushAttributes() {
-        return null;
+        // the object is only XML; images come from the image server
+        Set<String> set = new HashSet<String>();
+        AnomalyDescriptorView.addKeys(set, descriptorIndices);
+        set.add("image-1");
+        set.add("image-2");
+        set.add("image-3");
+        set.add("Device-Name");
+        set.add("Display-Name");
+        return set;
+    }
+
+    @Override
+    public String[] getDescriptorNames() {
+        return labels.clone();
+    }
+
+    @Override
+    public void setDescriptorIndices(int indices[]) {
+        descriptorIndices = indices.clone();
+    }
+
+    @Override
+    public void setConfiguration(Properties p) {
+        SearchSettings.apply(p, ignoreSpinner, labels, checkboxes, stddevs);
+
+        // "logic" is or, and or not over the selection; an expression
+        // makes it custom
+        String logic = p.getProperty("logic");
+        if (logic != null) {
+            logic = logic.trim();
+            if (logic.equals("or") || logic.equals("not")) {
+                easyOp = "OR";
+            } else if (logic.equals("and")) {
+                easyOp = "AND";
+            } else if (logic.equals("custom")) {
+                easyOp = "";
+            } else {
+                throw new IllegalArgumentException("bad value for logic: "
+                        + logic);
+            }
+            negateEasyOp = logic.equals("not");
+        }
+
+        String expression = p.getProperty("expression");
+        if (expression != null) {
+            easyOp = "";
+            logicalExpressionTextArea.setText(expression.trim());
+        } else {
+            updateEasyLogicExpression();
+        }
+    }
+
+    @Override
+    public Properties getConfiguration() {
+        Properties p = new Properties();
+        SearchSettings.store(p, ignoreSpinner, labels, checkboxes, stddevs);
+
+        // the queries themselves, in order, as in an attribute map
+        for (int i = 0; i < labels.length; i++) {
+            p.setProperty("query." + (i + 1), niceLabels[i] + ":"
+                    + queries[i]);
+        }
+
+        if (easyOp.equals("")) {
+            p.setProperty("logic", "custom");
+            p.setProperty("expression", logicalExpressionTextArea.getText());
+        } else if (negateEasyOp) {
+            p.setProperty("logic", "not");
+        } else {
+            p.setProperty("logic", easyOp.toLowerCase());
+        }
+        return p;
     }
 }